@@ -0,0 +1,260 @@
+package com.dist.gateway;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Controle de admissão do Gateway, na frente de /set, /get, TCP e UDP.
+ *
+ *  - limite de concorrência adaptativo por classe de operação: cresce
+ *    enquanto a latência das réplicas acompanha a média de longo prazo e
+ *    encolhe quando ela dispara ou as chamadas falham. Acima do limite a
+ *    requisição é recusada na hora (503 / "ERRO: busy") em vez de ficar
+ *    na fila esperando um timeout
+ *  - token bucket por endereço de cliente (desligado por padrão, já que
+ *    os geradores de carga locais saem todos do mesmo endereço)
+ *
+ * Leituras e escritas têm limites separados: um SET passa pela replicação
+ * e é naturalmente mais lento que um GET, então uma latência de referência
+ * só para os dois faria o limite de escrita encolher sem motivo.
+ */
+public class AdmissionController {
+
+    // Configuráveis pela linha de comando do Gateway
+    static volatile int maxConcorrencia = 512;
+    static volatile double taxaPorCliente = 0;   // requisições/s; 0 = sem limite
+    static volatile double rajadaPorCliente = 0; // 0 = igual à taxa
+
+    public static final LimiteAdaptativo LEITURA = new LimiteAdaptativo("read");
+    public static final LimiteAdaptativo ESCRITA = new LimiteAdaptativo("write");
+
+    private static final long INATIVIDADE_BALDE = TimeUnit.SECONDS.toNanos(60);
+
+    private static final Map<InetAddress, Balde> baldes = new ConcurrentHashMap<>();
+    private static final LongAdder limitadasPorCliente = new LongAdder();
+    private static volatile long proximaLimpeza = System.nanoTime() + INATIVIDADE_BALDE;
+
+    /** Consome uma ficha do balde do cliente; false se ele passou da taxa. */
+    public static boolean permitirCliente(InetAddress cliente) {
+        double taxa = taxaPorCliente;
+        if (taxa <= 0 || cliente == null) {
+            return true;
+        }
+        long agora = System.nanoTime();
+        if (agora >= proximaLimpeza) {
+            limparBaldes(agora);
+        }
+        Balde balde = baldes.get(cliente);
+        if (balde == null) {
+            balde = baldes.computeIfAbsent(cliente, c -> new Balde(agora));
+        }
+        double rajada = rajadaPorCliente > 0 ? rajadaPorCliente : taxa;
+        if (balde.consumir(agora, taxa, rajada)) {
+            return true;
+        }
+        limitadasPorCliente.increment();
+        return false;
+    }
+
+    // Esquece clientes que não aparecem há um minuto
+    private static void limparBaldes(long agora) {
+        proximaLimpeza = agora + INATIVIDADE_BALDE;
+        baldes.values().removeIf(b -> agora - b.ultimoUso > INATIVIDADE_BALDE);
+    }
+
+    static void writePrometheus(StringBuilder sb) {
+        LimiteAdaptativo[] limites = {LEITURA, ESCRITA};
+
+        sb.append("# HELP gateway_admission_limit Limite de concorrência adaptativo por classe\n");
+        sb.append("# TYPE gateway_admission_limit gauge\n");
+        for (LimiteAdaptativo l : limites) {
+            sb.append("gateway_admission_limit{class=\"").append(l.nome).append("\"} ")
+              .append(l.getLimite()).append('\n');
+        }
+        sb.append("# HELP gateway_admission_in_flight Requisições admitidas em andamento por classe\n");
+        sb.append("# TYPE gateway_admission_in_flight gauge\n");
+        for (LimiteAdaptativo l : limites) {
+            sb.append("gateway_admission_in_flight{class=\"").append(l.nome).append("\"} ")
+              .append(l.getEmVoo()).append('\n');
+        }
+        sb.append("# HELP gateway_shed_total Requisições recusadas pelo controle de admissão\n");
+        sb.append("# TYPE gateway_shed_total counter\n");
+        for (LimiteAdaptativo l : limites) {
+            sb.append("gateway_shed_total{class=\"").append(l.nome).append("\",reason=\"limit\"} ")
+              .append(l.recusadas.sum()).append('\n');
+        }
+        sb.append("gateway_shed_total{class=\"client\",reason=\"rate\"} ")
+          .append(limitadasPorCliente.sum()).append('\n');
+    }
+
+    /**
+     * Limite de concorrência por gradiente de latência.
+     *
+     * A cada janela (≥ 100 ms e ≥ 10 respostas) compara a latência média
+     * da janela com a referência — a menor média de janela do último
+     * minuto. Se a média atual passa de TOLERANCIA vezes a referência, o
+     * limite encolhe na mesma proporção (até a metade por janela); senão
+     * ele sobe com uma folga de √limite. Falhas de upstream na janela cortam
+     * o limite pela metade, e com o limite folgado (pouca carga) ele não
+     * cresce.
+     *
+     * A referência usa médias de janela, e não a menor latência individual,
+     * porque aqui a dispersão normal já é grande (um SET ocupa a réplica
+     * durante a replicação e os GETs ficam esperando atrás dele). Enquanto o
+     * limite estiver funcionando sempre aparecem janelas rápidas, então ela
+     * não sobe junto com uma sobrecarga prolongada.
+     */
+    public static class LimiteAdaptativo {
+        private static final int INICIAL = 32;
+        private static final int MINIMO = 4;
+        private static final double TOLERANCIA = 2.0;
+        private static final double SUAVIZACAO = 0.2;
+        private static final long JANELA_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+        private static final int AMOSTRAS_POR_JANELA = 10;
+        private static final long BLOCO_REFERENCIA = TimeUnit.SECONDS.toNanos(10);
+        private static final int BLOCOS_REFERENCIA = 6;
+
+        final String nome;
+        private final AtomicInteger emVoo = new AtomicInteger();
+        private volatile double limite = INICIAL;
+        final LongAdder recusadas = new LongAdder();
+
+        // guardados pelo monitor do objeto
+        private long inicioJanela = System.nanoTime();
+        private long somaJanela;
+        private int amostras;
+        private int emVooMaximo;
+        private boolean falhaNaJanela;
+        private final double[] minimoPorBloco = new double[BLOCOS_REFERENCIA];
+        private int blocoAtual;
+        private long fimBloco = System.nanoTime() + BLOCO_REFERENCIA;
+
+        LimiteAdaptativo(String nome) {
+            this.nome = nome;
+        }
+
+        public boolean tentarAdquirir() {
+            while (true) {
+                int atual = emVoo.get();
+                if (atual >= (int) limite) {
+                    recusadas.increment();
+                    return false;
+                }
+                if (emVoo.compareAndSet(atual, atual + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /** Devolve a vaga sem usar a amostra (a chamada nem chegou à réplica). */
+        public void liberar() {
+            emVoo.decrementAndGet();
+        }
+
+        /** Devolve a vaga e ajusta o limite com a latência da chamada. */
+        public void liberar(long inicioNanos, boolean falhou) {
+            int emVooAntes = emVoo.getAndDecrement();
+            long agora = System.nanoTime();
+
+            synchronized (this) {
+                if (falhou) {
+                    falhaNaJanela = true;
+                } else {
+                    somaJanela += agora - inicioNanos;
+                    amostras++;
+                }
+                if (emVooAntes > emVooMaximo) {
+                    emVooMaximo = emVooAntes;
+                }
+                if (agora - inicioJanela >= JANELA_NANOS
+                        && (amostras >= AMOSTRAS_POR_JANELA || falhaNaJanela)) {
+                    fecharJanela(agora);
+                    inicioJanela = agora;
+                    somaJanela = 0;
+                    amostras = 0;
+                    emVooMaximo = 0;
+                    falhaNaJanela = false;
+                }
+            }
+        }
+
+        private void fecharJanela(long agora) {
+            double l = limite;
+            if (falhaNaJanela) {
+                limite = Math.max(MINIMO, l / 2);
+                return;
+            }
+            double rttCurto = (double) somaJanela / amostras;
+            double referencia = registrarReferencia(agora, rttCurto);
+
+            double gradiente = Math.max(0.5, Math.min(1.0, TOLERANCIA * referencia / rttCurto));
+            // com o limite folgado só faz sentido encolher: crescer um limite
+            // que nem está sendo usado o deixaria solto quando a carga vier
+            boolean folgado = emVooMaximo * 2 < l;
+            if (folgado && gradiente >= 1.0) {
+                return;
+            }
+            double novo = l * gradiente + (folgado ? 0 : Math.sqrt(l));
+            novo = l * (1 - SUAVIZACAO) + novo * SUAVIZACAO;
+            limite = Math.max(MINIMO, Math.min(maxConcorrencia, novo));
+        }
+
+        // Guarda a média da janela no bloco de 10 s atual e devolve a menor do último minuto
+        private double registrarReferencia(long agora, double rttCurto) {
+            if (agora >= fimBloco) {
+                blocoAtual = (blocoAtual + 1) % BLOCOS_REFERENCIA;
+                minimoPorBloco[blocoAtual] = 0;
+                fimBloco = agora + BLOCO_REFERENCIA;
+            }
+            if (minimoPorBloco[blocoAtual] == 0 || rttCurto < minimoPorBloco[blocoAtual]) {
+                minimoPorBloco[blocoAtual] = rttCurto;
+            }
+            double referencia = Double.MAX_VALUE;
+            for (double m : minimoPorBloco) {
+                if (m > 0 && m < referencia) {
+                    referencia = m;
+                }
+            }
+            return referencia;
+        }
+
+        public int getLimite() {
+            return (int) limite;
+        }
+
+        public int getEmVoo() {
+            return emVoo.get();
+        }
+    }
+
+    private static final class Balde {
+        private double fichas;
+        private long ultimaRecarga;
+        volatile long ultimoUso;
+
+        Balde(long agora) {
+            this.fichas = -1; // enche na primeira consulta
+            this.ultimaRecarga = agora;
+            this.ultimoUso = agora;
+        }
+
+        synchronized boolean consumir(long agora, double taxa, double rajada) {
+            if (fichas < 0) {
+                fichas = rajada;
+            } else {
+                fichas = Math.min(rajada, fichas + (agora - ultimaRecarga) * taxa / 1e9);
+            }
+            ultimaRecarga = agora;
+            ultimoUso = agora;
+            if (fichas >= 1) {
+                fichas -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -7,60 +7,153 @@ import com.sun.net.httpserver.HttpServer;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.concurrent.Executors;
-
-import java.net.URI;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.util.List;
 
 
 /**
  * API Gateway:
- *  - HTTP na porta 8080 (/set e /get)
- *  - UDP na porta 8000 (REGISTER + HEARTBEAT)
+ *  - HTTP na porta 8080 (/set, /get, /scan, /status, /metrics e /hotkeys)
+ *    /set também aceita POST /set?key=... com o valor cru no corpo
+ *  - UDP na porta 8000 (REGISTER + HEARTBEAT + GOSSIP)
+ *  - TCP 9000 e UDP 9001 para os protocolos de texto
+ *
+ * O registro (nós, líder e época) é gravado em registro-<gatewayId>.txt
+ * (--arquivoRegistro=) e recarregado ao subir.
+ *
+ * Vários Gateways podem rodar juntos (--port=, --udpPort=, --tcpPort=,
+ * --udpCmdPort=, --gatewayId= e --peers= com a porta UDP dos outros): as
+ * réplicas mandam heartbeat para todos, o Gossip mantém o mesmo líder em
+ * todos e os clientes escolhem qualquer um da lista.
  */
 public class ApiGatewayApplication {
 
-    private static final HttpClient httpClient = HttpClient.newHttpClient();
-
     public static void main(String[] args) throws Exception {
     int httpPort = 8080;
     int udpPort = 8000;   // REGISTER/HEARTBEAT
     int tcpPort = 9000;   // TCP cliente
     int udpCmdPort = 9001; // UDP cliente 
+    String gatewayId = null;
+    String peers = null;
+    boolean bloomExplicito = false;
+    String arquivoRegistro = null;
+    int maxThreadsHttp = 256;
+    int filaHttp = 1024;
+    int threadsInternas = 32;
+    int filaInterna = 4096;
 
         for (String arg : args) {
             if (arg.startsWith("--port=")) {
                 httpPort = Integer.parseInt(arg.substring("--port=".length()));
             } else if (arg.startsWith("--udpPort=")) {
                 udpPort = Integer.parseInt(arg.substring("--udpPort=".length()));
+            } else if (arg.startsWith("--tcpPort=")) {
+                tcpPort = Integer.parseInt(arg.substring("--tcpPort=".length()));
+            } else if (arg.startsWith("--udpCmdPort=")) {
+                udpCmdPort = Integer.parseInt(arg.substring("--udpCmdPort=".length()));
+            } else if (arg.startsWith("--gatewayId=")) {
+                gatewayId = arg.substring("--gatewayId=".length());
+            } else if (arg.startsWith("--arquivoRegistro=")) {
+                arquivoRegistro = arg.substring("--arquivoRegistro=".length());
+            } else if (arg.startsWith("--peers=")) {
+                peers = arg.substring("--peers=".length());
+            } else if (arg.startsWith("--maxEmVooPorNo=")) {
+                ConnectionManager.maxEmVooPorNo = Integer.parseInt(arg.substring("--maxEmVooPorNo=".length()));
+            } else if (arg.startsWith("--timeoutUpstreamMs=")) {
+                ConnectionManager.timeoutRequisicao =
+                        java.time.Duration.ofMillis(Long.parseLong(arg.substring("--timeoutUpstreamMs=".length())));
+            } else if (arg.startsWith("--falhasParaAbrirCircuito=")) {
+                ConnectionManager.falhasParaAbrir =
+                        Integer.parseInt(arg.substring("--falhasParaAbrirCircuito=".length()));
+            } else if (arg.startsWith("--circuitoAbertoMs=")) {
+                ConnectionManager.tempoAberto =
+                        java.time.Duration.ofMillis(Long.parseLong(arg.substring("--circuitoAbertoMs=".length())));
+            } else if (arg.startsWith("--maxConcorrencia=")) {
+                AdmissionController.maxConcorrencia =
+                        Integer.parseInt(arg.substring("--maxConcorrencia=".length()));
+            } else if (arg.startsWith("--taxaPorCliente=")) {
+                AdmissionController.taxaPorCliente =
+                        Double.parseDouble(arg.substring("--taxaPorCliente=".length()));
+            } else if (arg.startsWith("--rajadaPorCliente=")) {
+                AdmissionController.rajadaPorCliente =
+                        Double.parseDouble(arg.substring("--rajadaPorCliente=".length()));
+            } else if (arg.startsWith("--maxThreadsHttp=")) {
+                maxThreadsHttp = Integer.parseInt(arg.substring("--maxThreadsHttp=".length()));
+            } else if (arg.startsWith("--filaHttp=")) {
+                filaHttp = Integer.parseInt(arg.substring("--filaHttp=".length()));
+            } else if (arg.startsWith("--threadsInternas=")) {
+                threadsInternas = Integer.parseInt(arg.substring("--threadsInternas=".length()));
+            } else if (arg.startsWith("--filaInterna=")) {
+                filaInterna = Integer.parseInt(arg.substring("--filaInterna=".length()));
+            } else if (arg.startsWith("--maxReplicacaoEmVooPorNo=")) {
+                ConnectionManager.maxReplicacaoEmVooPorNo =
+                        Integer.parseInt(arg.substring("--maxReplicacaoEmVooPorNo=".length()));
+            } else if (arg.startsWith("--maxConexoesTcp=")) {
+                TCPServer.maxConexoes = Integer.parseInt(arg.substring("--maxConexoesTcp=".length()));
+            } else if (arg.startsWith("--threadsUdp=")) {
+                UDPCommandServer.trabalhadores = Integer.parseInt(arg.substring("--threadsUdp=".length()));
+            } else if (arg.startsWith("--filaUdp=")) {
+                UDPCommandServer.fila = Integer.parseInt(arg.substring("--filaUdp=".length()));
+            } else if (arg.startsWith("--hotKeys=")) {
+                HotKeys.k = Integer.parseInt(arg.substring("--hotKeys=".length()));
+            } else if (arg.startsWith("--bloomSyncMs=")) {
+                BloomFilter.sincronizacaoMs = Long.parseLong(arg.substring("--bloomSyncMs=".length()));
+                bloomExplicito = true;
             }
         }
 
+        if (gatewayId == null) {
+            gatewayId = "G" + httpPort;
+        }
+
+        // Nós, líder e época da execução anterior (--arquivoRegistro= vazio não grava)
+        if (arquivoRegistro == null) {
+            arquivoRegistro = "registro-" + gatewayId + ".txt";
+        }
+        if (!arquivoRegistro.isEmpty()) {
+            ServiceRegistry.carregar(java.nio.file.Path.of(arquivoRegistro));
+        }
+
+        // Visão do cluster compartilhada com os outros Gateways
+        Gossip.iniciar(gatewayId, peers);
+
+        // Um SET feito por outro Gateway só chegaria ao Bloom filter daqui na
+        // próxima sincronização, e um GET nesse meio tempo levaria 404 falso.
+        // Com peers, o filtro fica desligado a menos que --bloomSyncMs seja dado.
+        if (peers != null && !peers.isBlank() && !bloomExplicito) {
+            BloomFilter.sincronizacaoMs = 0;
+            System.out.println("[Gateway] Bloom filter de chaves desligado (vários Gateways)");
+        }
+
         // Inicia o servidor UDP para REGISTER + HEARTBEAT
         Thread udpThread = new Thread(new UDPRegisterServer(udpPort));
         udpThread.setDaemon(true);
         udpThread.start();
 
         // Inicia servidor HTTP
+        // Sem TCP_NODELAY o HttpServer do JDK responde cabeçalho e corpo em
+        // segmentos separados e cada resposta numa conexão keep-alive espera
+        // o ACK atrasado do cliente (~40 ms)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
         HttpServer server = HttpServer.create(new InetSocketAddress(httpPort), 0);
         System.out.println("[Gateway] Servidor HTTP iniciado na porta " + httpPort);
 
-        server.createContext("/set", new SetProxyHandler());
-        server.createContext("/get", new GetProxyHandler());
-        server.createContext("/status", new StatusHandler());
-// endpoint interno para replicar entradas do log
-server.createContext("/append", new AppendProxyHandler());
-
-
-        server.setExecutor(Executors.newCachedThreadPool());
+        // Duas faixas com threads e filas próprias: a dos clientes e a interna
+        // (replicação e métricas). Com uma delas cheia a resposta é 503 na
+        // hora, e a outra nem percebe. O HttpServer em si só lê o pedido.
+        Faixa clientes = new Faixa("client", maxThreadsHttp, filaHttp);
+        Faixa interna = new Faixa("internal", threadsInternas, filaInterna);
+
+        server.createContext("/set", clientes.envolver(new SetProxyHandler()));
+        server.createContext("/get", clientes.envolver(new GetProxyHandler()));
+        server.createContext("/scan", clientes.envolver(new ScanProxyHandler()));
+        server.createContext("/status", clientes.envolver(new StatusHandler()));
+        server.createContext("/hotkeys", clientes.envolver(new HotKeys.HotKeysHandler()));
+        server.createContext("/metrics", interna.envolver(new Metrics.MetricsHandler()));
+        // endpoint interno para replicar entradas do log
+        server.createContext("/append", interna.envolver(new AppendProxyHandler()));
+
+        server.setExecutor(null);
         server.start();
 
         Thread monitor = new Thread(new RegistryMonitor());
@@ -68,8 +161,15 @@ monitor.setDaemon(true);
 monitor.start();
 System.out.println("[Gateway] Monitor de nós iniciado.");
 
+        // Cópia local do Bloom filter de chaves do líder (404 sem ir à réplica)
+        if (BloomFilter.sincronizacaoMs > 0) {
+            Thread bloom = new Thread(new BloomFilter.Sincronizador());
+            bloom.setDaemon(true);
+            bloom.start();
+        }
+
 // Inicia servidor TCP
-Thread tcpThread = new Thread(new TCPServer(9000));
+Thread tcpThread = new Thread(new TCPServer(tcpPort));
 tcpThread.setDaemon(true);
 tcpThread.start();
 System.out.println("[Gateway] TCP pronto na porta "+ tcpPort);
@@ -87,40 +187,43 @@ System.out.println("[Gateway] TCP pronto na porta "+ tcpPort);
     static class SetProxyHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-
-            ServiceRegistry.NodeInfo leader = ServiceRegistry.getLeaderAtivo();
-            if (leader == null) {
-                send(exchange, 503,
-                        "Nenhum nó LEADER ativo encontrado. " +
-                        "Verifique se o nó está rodando e enviando heartbeat.");
+            if (!AdmissionController.permitirCliente(exchange.getRemoteAddress().getAddress())) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 429, "Limite de requisições do cliente excedido.");
                 return;
             }
 
-            System.out.println("[Gateway] Encaminhando SET para líder "
-                    + leader.id + " (" + leader.baseUrl() + ")");
-
             String query = exchange.getRequestURI().getRawQuery();
-            String leaderUrl = leader.baseUrl() + "/set";
-            if (query != null && !query.isEmpty()) {
-                leaderUrl += "?" + query;
+            if (query == null || query.isEmpty()) {
+                send(exchange, 400, "Faltando parâmetros ?key=&value=");
+                return;
             }
 
-            try {
-                HttpRequest reqLeader = HttpRequest.newBuilder()
-                        .uri(URI.create(leaderUrl))
-                        .GET()
-                        .build();
-
-                HttpResponse<String> leaderResp =
-                        httpClient.send(reqLeader, HttpResponse.BodyHandlers.ofString());
-
-                send(exchange, leaderResp.statusCode(), leaderResp.body());
-
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                send(exchange, 500, "Erro: Thread interrompida (" + e.getMessage() + ")");
-            } catch (Exception e) {
-                send(exchange, 502, "Erro ao encaminhar para o líder: " + e.getMessage());
+            // POST: o valor vem no corpo e vai para o líder como stream
+            HttpRequest.BodyPublisher corpo = null;
+            if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                corpo = CommandDispatcher.corpoDoStream(exchange.getRequestBody(), tamanhoDoCorpo(exchange));
+            }
+            CommandDispatcher.Resposta r = CommandDispatcher.set(query, corpo);
+
+            switch (r.falha) {
+                case SEM_NO:
+                    send(exchange, 503,
+                            "Nenhum nó LEADER ativo encontrado. " +
+                            "Verifique se o nó está rodando e enviando heartbeat.");
+                    break;
+                case OCUPADO:
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    send(exchange, 503, "Gateway sobrecarregado, tente novamente.");
+                    break;
+                case INTERROMPIDA:
+                    send(exchange, 500, "Erro: Thread interrompida (" + r.body + ")");
+                    break;
+                case UPSTREAM:
+                    send(exchange, 502, "Erro ao encaminhar para o líder: " + r.body);
+                    break;
+                default:
+                    send(exchange, r.status, r.body);
             }
         }
     }
@@ -130,38 +233,76 @@ System.out.println("[Gateway] TCP pronto na porta "+ tcpPort);
     static class GetProxyHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-            ServiceRegistry.NodeInfo node = ServiceRegistry.getNodeParaGet();
-
-            if (node == null) {
-                send(exchange, 503,
-                        "Nenhum nó disponível para GET. " +
-                        "Verifique se há nós ativos enviando heartbeat.");
+            if (!AdmissionController.permitirCliente(exchange.getRemoteAddress().getAddress())) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 429, "Limite de requisições do cliente excedido.");
                 return;
             }
-System.out.println("[Gateway] Encaminhando GET para nó " + node.id +
-        " (" + node.baseUrl() + ")");
 
-            String query = exchange.getRequestURI().getRawQuery();
-            String targetUrl = node.baseUrl() + "/get";
-            if (query != null && !query.isEmpty()) {
-                targetUrl += "?" + query;
+            CommandDispatcher.Resposta r =
+                    CommandDispatcher.get(exchange.getRequestURI().getRawQuery());
+
+            switch (r.falha) {
+                case SEM_NO:
+                    send(exchange, 503,
+                            "Nenhum nó disponível para GET. " +
+                            "Verifique se há nós ativos enviando heartbeat.");
+                    break;
+                case OCUPADO:
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    send(exchange, 503, "Gateway sobrecarregado, tente novamente.");
+                    break;
+                case INTERROMPIDA:
+                    send(exchange, 500, "Erro: Thread interrompida (" + r.body + ")");
+                    break;
+                case UPSTREAM:
+                    send(exchange, 502, "Erro ao encaminhar para o nó: " + r.body);
+                    break;
+                default:
+                    send(exchange, r.status, r.body);
             }
+        }
+    }
 
-            try {
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(targetUrl))
-                        .GET()
-                        .build();
-
-                HttpResponse<String> response =
-                        httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    // Handler para /scan: repassa o stream da réplica em chunks, sem guardar a resposta
+    static class ScanProxyHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!AdmissionController.permitirCliente(exchange.getRemoteAddress().getAddress())) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 429, "Limite de requisições do cliente excedido.");
+                return;
+            }
 
-                send(exchange, response.statusCode(), response.body());
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                send(exchange, 500, "Erro: Thread interrompida (" + e.getMessage() + ")");
-            } catch (Exception e) {
-                send(exchange, 502, "Erro ao encaminhar para o nó: " + e.getMessage());
+            CommandDispatcher.Resposta r = CommandDispatcher.scan(
+                    exchange.getRequestURI().getRawQuery(), (status, corpo) -> {
+                        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                        exchange.sendResponseHeaders(status, 0);
+                        try (OutputStream os = exchange.getResponseBody()) {
+                            corpo.transferTo(os);
+                        }
+                    });
+
+            switch (r.falha) {
+                case NENHUMA:
+                    break; // a resposta já foi enviada pelo stream
+                case SEM_NO:
+                    send(exchange, 503,
+                            "Nenhum nó disponível para SCAN. " +
+                            "Verifique se há nós ativos enviando heartbeat.");
+                    break;
+                case OCUPADO:
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    send(exchange, 503, "Gateway sobrecarregado, tente novamente.");
+                    break;
+                case INTERROMPIDA:
+                    send(exchange, 500, "Erro: Thread interrompida (" + r.body + ")");
+                    break;
+                case UPSTREAM:
+                    send(exchange, 502, "Erro ao encaminhar para o nó: " + r.body);
+                    break;
+                default:
+                    send(exchange, r.status, r.body);
             }
         }
     }
@@ -185,20 +326,9 @@ static class StatusHandler implements HttpHandler {
     @Override
     public void handle(HttpExchange exchange) throws IOException {
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("===== STATUS DO CLUSTER =====\n");
-
-        for (ServiceRegistry.NodeInfo info : ServiceRegistry.getTodosOsNos()) {
-
-            sb.append("\nNó ").append(info.id).append(":\n");
-            sb.append("  Papel: ").append(info.role).append("\n");
-            sb.append("  Endereço: ").append(info.baseUrl()).append("\n");
-            sb.append("  Ativo: ").append(info.ativo ? "SIM" : "NÃO").append("\n");
-            sb.append("  Último heartbeat: ").append(info.lastHeartbeatMillis).append("\n");
-        }
-
-        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
-        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        // mesmo JSON do STATUS: papéis, circuito, atraso de replicação e carga por nó
+        byte[] bytes = CommandDispatcher.gerarStatus().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
         exchange.sendResponseHeaders(200, bytes.length);
 
         try (OutputStream os = exchange.getResponseBody()) {
@@ -218,34 +348,72 @@ static class StatusHandler implements HttpHandler {
                 return;
             }
 
+            // POST: lê o valor uma vez num buffer reaproveitado e manda os mesmos bytes a cada follower
+            CorpoDoPost valor = null;
+            if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                valor = CorpoDoPost.ler(exchange.getRequestBody());
+                if (valor == null) {
+                    send(exchange, 413, "Valor maior que " + CorpoDoPost.MAX_VALOR_BYTES + " bytes");
+                    return;
+                }
+            }
+
             java.util.List<ServiceRegistry.NodeInfo> followers = ServiceRegistry.getFollowersAtivos();
             int sucesso = 0;
             int falha = 0;
+            long index = indiceDaQuery(query);
+            long inicioFanOut = System.nanoTime();
 
             for (ServiceRegistry.NodeInfo f : followers) {
                 String followerUrl = f.baseUrl() + "/append?" + query;
                 System.out.println("[Gateway] Replicando APPEND para follower "
                         + f.id + " (" + followerUrl + ")");
 
-                try {
-                    HttpRequest reqFollower = HttpRequest.newBuilder()
-                            .uri(URI.create(followerUrl))
-                            .GET()
-                            .build();
-
-                    httpClient.send(reqFollower, HttpResponse.BodyHandlers.ofString());
+                long inicio = System.nanoTime();
+                HttpRequest.BodyPublisher corpo = valor == null ? null
+                        : HttpRequest.BodyPublishers.ofByteArray(valor.bytes, 0, valor.tamanho);
+                CommandDispatcher.Resposta r = CommandDispatcher.replicar(f, query, corpo);
+                Metrics.replicacao(f.id, index, inicio, r.ok());
+                if (r.ok()) {
                     sucesso++;
-
-                } catch (Exception e) {
+                } else {
                     falha++;
                     System.out.println("[Gateway] Falha ao replicar APPEND para "
-                            + f.id + ": " + e.getMessage());
+                            + f.id + ": " + r.body);
                 }
             }
+            Metrics.proxy(Metrics.APPEND_FAN_OUT).recordSince(inicioFanOut);
 
             String body = "APPEND enviado. Followers OK=" + sucesso + ", falhas=" + falha;
             send(exchange, 200, body);
         }
+
+        // Extrai o parâmetro index=N da query sem decodificar o resto
+        private static long indiceDaQuery(String query) {
+            for (String pair : query.split("&")) {
+                if (pair.startsWith("index=")) {
+                    try {
+                        return Long.parseLong(pair.substring("index=".length()));
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+            return 0;
+        }
+    }
+
+    // Content-Length do pedido, ou -1 se veio chunked
+    private static long tamanhoDoCorpo(HttpExchange exchange) {
+        String cl = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (cl == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(cl.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     private static void send(HttpExchange exchange, int statusCode, String body) throws IOException {
@@ -0,0 +1,203 @@
+package com.dist.gateway;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cópia no Gateway do Bloom filter de chaves das réplicas, para responder
+ * GETs de chaves que com certeza não existem sem chamar nenhum nó.
+ *
+ *  - o Sincronizador busca /bloom?desde=V no líder a cada segundo: o
+ *    filtro inteiro na primeira vez (ou quando o líder muda) e só os
+ *    hashes novos depois
+ *  - todo SET que passa pelo Gateway liga os bits da chave aqui antes de
+ *    ser encaminhado, então um GET logo em seguida nunca é recusado
+ *  - bits só são ligados, nunca desligados: o filtro de um líder novo é
+ *    somado ao que já existe
+ *
+ * Enquanto a primeira cópia completa não chegou, nada é recusado.
+ * Tamanho e hash têm de bater com o BloomFilter das réplicas.
+ */
+public class BloomFilter {
+
+    static final int BITS = 1 << 23;
+    static final int HASHES = 6;
+
+    // Configurável pela linha de comando do Gateway (0 desliga)
+    static volatile long sincronizacaoMs = 1000;
+
+    public static final BloomFilter CHAVES = new BloomFilter();
+
+    private final AtomicLongArray palavras = new AtomicLongArray(BITS / 64);
+    private volatile boolean pronto;
+
+    /** Liga os bits da chave (já decodificada). */
+    public void adicionar(String chave) {
+        adicionarHash(hash(chave));
+    }
+
+    /** false só quando a chave com certeza não existe em nenhuma réplica. */
+    public boolean podeConter(String chave) {
+        if (!pronto) {
+            return true;
+        }
+        long h = hash(chave);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & (BITS - 1);
+            if ((palavras.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isPronto() {
+        return pronto;
+    }
+
+    /** Liga os bits da chave do parâmetro key= de uma query ainda codificada. */
+    public void adicionarDaQuery(String query) {
+        String chave = chaveDaQuery(query);
+        if (chave != null) {
+            adicionar(chave);
+        }
+    }
+
+    /** Chave decodificada do parâmetro key=, ou null se não houver. */
+    static String chaveDaQuery(String query) {
+        if (query == null) {
+            return null;
+        }
+        int inicio;
+        if (query.startsWith("key=")) {
+            inicio = 4;
+        } else {
+            int i = query.indexOf("&key=");
+            if (i < 0) {
+                return null;
+            }
+            inicio = i + 5;
+        }
+        int fim = query.indexOf('&', inicio);
+        String codificada = query.substring(inicio, fim < 0 ? query.length() : fim);
+        try {
+            return URLDecoder.decode(codificada, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void adicionarHash(long h) {
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & (BITS - 1);
+            long mascara = 1L << bit;
+            int palavra = bit >>> 6;
+            if ((palavras.get(palavra) & mascara) == 0) {
+                palavras.getAndAccumulate(palavra, mascara, (a, b) -> a | b);
+            }
+        }
+    }
+
+    /** Aplica uma resposta de /bloom e devolve a versão da réplica que ela representa. */
+    long aplicar(byte[] resposta) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(resposta));
+        byte tipo = in.readByte();
+        long versao = in.readLong();
+        int n = in.readInt();
+        if (tipo == 'F') {
+            if (n != palavras.length()) {
+                throw new IOException("filtro com tamanho diferente: " + n + " palavras");
+            }
+            for (int i = 0; i < n; i++) {
+                long p = in.readLong();
+                if (p != 0) {
+                    palavras.getAndAccumulate(i, p, (a, b) -> a | b);
+                }
+            }
+            pronto = true;
+        } else if (tipo == 'D') {
+            for (int i = 0; i < n; i++) {
+                adicionarHash(in.readLong());
+            }
+        } else {
+            throw new IOException("tipo de resposta desconhecido: " + (char) tipo);
+        }
+        return versao;
+    }
+
+    // FNV-1a de 64 bits sobre os chars da chave, com o finalizador do splitmix64
+    static long hash(String chave) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < chave.length(); i++) {
+            h ^= chave.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    /** Puxa o filtro do líder periodicamente. */
+    static class Sincronizador implements Runnable {
+        private ServiceRegistry.NodeInfo origem;
+        private long versao;
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Thread.sleep(sincronizacaoMs);
+                    sincronizar();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    System.out.println("[Gateway] Erro ao sincronizar Bloom filter: " + e.getMessage());
+                }
+            }
+        }
+
+        private void sincronizar() throws Exception {
+            ServiceRegistry.NodeInfo leader = ServiceRegistry.getLeaderAtivo();
+            if (leader == null) {
+                return;
+            }
+            if (leader != origem) {
+                // versões são de cada réplica: com outro líder começa do filtro inteiro
+                origem = leader;
+                versao = 0;
+            }
+
+            ConnectionManager.Conexao conexao = ConnectionManager.para(leader);
+            if (!conexao.adquirir()) {
+                return;
+            }
+            boolean sucesso = false;
+            try {
+                HttpRequest request = HttpRequest.newBuilder()
+                        .uri(URI.create(leader.baseUrl() + "/bloom?desde=" + versao))
+                        .timeout(ConnectionManager.timeoutRequisicao)
+                        .GET()
+                        .build();
+                HttpResponse<byte[]> response =
+                        conexao.client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                sucesso = true;
+                if (response.statusCode() == 200) {
+                    versao = CHAVES.aplicar(response.body());
+                }
+            } finally {
+                conexao.liberar(sucesso);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.dist.gateway;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Comando de texto já interpretado pelo CommandCodec.
+ *
+ * Não copia nada: guarda só o buffer de origem e as posições da chave, do
+ * valor e de um terceiro argumento (o valor novo do CAS) dentro dele.
+ * Cada conexão TCP / servidor UDP reaproveita a mesma instância para
+ * todos os comandos, então o buffer só é válido até o próximo parse.
+ */
+public class Comando {
+
+    public enum Tipo { VAZIO, SET, GET, CAS, INCR, APPEND, SCAN, STATUS, QUIT, DESCONHECIDO }
+
+    Tipo tipo = Tipo.VAZIO;
+    ByteBuffer buffer;
+
+    // Quantidade de argumentos depois do nome do comando
+    int argumentos;
+
+    int chaveInicio, chaveFim;
+    int valorInicio, valorFim;
+    int extraInicio, extraFim;
+
+    // Fim da linha: o SCAN lê as opções de chaveInicio até aqui
+    int fim;
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    public int getArgumentos() {
+        return argumentos;
+    }
+
+    /** Acrescenta a chave codificada para URL (application/x-www-form-urlencoded). */
+    public void appendChaveCodificada(StringBuilder sb) {
+        CommandCodec.appendUrlEncoded(sb, buffer, chaveInicio, chaveFim);
+    }
+
+    public void appendValorCodificado(StringBuilder sb) {
+        CommandCodec.appendUrlEncoded(sb, buffer, valorInicio, valorFim);
+    }
+
+    public void appendExtraCodificado(StringBuilder sb) {
+        CommandCodec.appendUrlEncoded(sb, buffer, extraInicio, extraFim);
+    }
+
+    /** Acrescenta os argumentos como opções de query ("&nome=valor"), para o SCAN. */
+    public void appendOpcoesCodificadas(StringBuilder sb) {
+        if (argumentos > 0) {
+            CommandCodec.appendOpcoes(sb, buffer, chaveInicio, fim);
+        }
+    }
+
+    /** Cria a String da chave (só quando realmente necessário, por exemplo para logs). */
+    public String chave() {
+        return texto(chaveInicio, chaveFim);
+    }
+
+    public String valor() {
+        return texto(valorInicio, valorFim);
+    }
+
+    private String texto(int inicio, int fim) {
+        byte[] bytes = new byte[fim - inicio];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(inicio + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    void limpar(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.tipo = Tipo.VAZIO;
+        this.argumentos = 0;
+        this.chaveInicio = this.chaveFim = 0;
+        this.valorInicio = this.valorFim = 0;
+        this.extraInicio = this.extraFim = 0;
+        this.fim = 0;
+    }
+}
@@ -0,0 +1,198 @@
+package com.dist.gateway;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parser dos comandos de texto (TCP e UDP) direto sobre os bytes recebidos.
+ *
+ * Formato: NOME [chave [valor [extra]]], separados por espaços/tabs, nome sem
+ * diferenciar maiúsculas. Ao contrário do antigo split("\\s+"), não cria
+ * tokens: o resultado vai para um Comando reaproveitado, com as posições
+ * da chave e do valor dentro do próprio buffer.
+ */
+public final class CommandCodec {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private CommandCodec() {
+    }
+
+    /**
+     * Interpreta os bytes [inicio, fim) do buffer. Não altera position/limit.
+     * Argumentos além do terceiro são ignorados.
+     */
+    public static void parse(ByteBuffer buf, int inicio, int fim, Comando out) {
+        out.limpar(buf);
+        out.fim = fim;
+
+        int i = pularEspacos(buf, inicio, fim);
+        if (i >= fim) {
+            return; // VAZIO
+        }
+        int nomeInicio = i;
+        i = fimDoToken(buf, i, fim);
+        out.tipo = tipoDoNome(buf, nomeInicio, i);
+
+        i = pularEspacos(buf, i, fim);
+        if (i < fim) {
+            out.chaveInicio = i;
+            i = fimDoToken(buf, i, fim);
+            out.chaveFim = i;
+            out.argumentos = 1;
+
+            i = pularEspacos(buf, i, fim);
+            if (i < fim) {
+                out.valorInicio = i;
+                i = fimDoToken(buf, i, fim);
+                out.valorFim = i;
+                out.argumentos = 2;
+
+                i = pularEspacos(buf, i, fim);
+                if (i < fim) {
+                    out.extraInicio = i;
+                    i = fimDoToken(buf, i, fim);
+                    out.extraFim = i;
+                    out.argumentos = 3;
+                }
+            }
+        }
+    }
+
+    private static Comando.Tipo tipoDoNome(ByteBuffer buf, int inicio, int fim) {
+        switch (fim - inicio) {
+            case 3:
+                if (igualIgnorandoCaixa(buf, inicio, "SET")) return Comando.Tipo.SET;
+                if (igualIgnorandoCaixa(buf, inicio, "GET")) return Comando.Tipo.GET;
+                if (igualIgnorandoCaixa(buf, inicio, "CAS")) return Comando.Tipo.CAS;
+                break;
+            case 4:
+                if (igualIgnorandoCaixa(buf, inicio, "QUIT")) return Comando.Tipo.QUIT;
+                if (igualIgnorandoCaixa(buf, inicio, "INCR")) return Comando.Tipo.INCR;
+                if (igualIgnorandoCaixa(buf, inicio, "SCAN")) return Comando.Tipo.SCAN;
+                break;
+            case 6:
+                if (igualIgnorandoCaixa(buf, inicio, "STATUS")) return Comando.Tipo.STATUS;
+                if (igualIgnorandoCaixa(buf, inicio, "APPEND")) return Comando.Tipo.APPEND;
+                break;
+            default:
+                break;
+        }
+        return Comando.Tipo.DESCONHECIDO;
+    }
+
+    // 'nome' está sempre em maiúsculas ASCII
+    private static boolean igualIgnorandoCaixa(ByteBuffer buf, int inicio, String nome) {
+        for (int k = 0; k < nome.length(); k++) {
+            int b = buf.get(inicio + k);
+            if (b >= 'a' && b <= 'z') b -= 'a' - 'A';
+            if (b != nome.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    private static boolean espaco(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == 0x0B || b == '\f';
+    }
+
+    private static int pularEspacos(ByteBuffer buf, int i, int fim) {
+        while (i < fim && espaco(buf.get(i))) i++;
+        return i;
+    }
+
+    private static int fimDoToken(ByteBuffer buf, int i, int fim) {
+        while (i < fim && !espaco(buf.get(i))) i++;
+        return i;
+    }
+
+    /**
+     * Converte os tokens de [inicio, fim) em parâmetros de query: "nome=valor"
+     * vira "&nome=valor" (codificados) e um token sem '=' vira "&prefix=token".
+     * Usado pelo SCAN, que tem opções demais para posições fixas.
+     *
+     * As linhas do SCAN e o "# cursor=" mostram as chaves codificadas
+     * (user%3A42), e cursor, start e end são sempre lidos nessa forma: %XX é
+     * um escape e '+' é espaço, exatamente como a réplica decodifica a query.
+     * Uma chave com '%' ou '+' literais se escreve com %25 e %2B (a chave
+     * "a%41" é a%2541; a%41 é a chave "aA"). Os outros caracteres, que não
+     * aparecem na forma codificada, valem por si (start=user:3 é "user:3"),
+     * e também um '%' que não forma escape.
+     */
+    static void appendOpcoes(StringBuilder sb, ByteBuffer buf, int inicio, int fim) {
+        int i = pularEspacos(buf, inicio, fim);
+        while (i < fim) {
+            int tokenFim = fimDoToken(buf, i, fim);
+            int igual = -1;
+            for (int j = i; j < tokenFim; j++) {
+                if (buf.get(j) == '=') {
+                    igual = j;
+                    break;
+                }
+            }
+            sb.append('&');
+            if (igual > i) {
+                appendUrlEncoded(sb, buf, i, igual);
+                sb.append('=');
+                if (opcaoDeChave(buf, i, igual)) {
+                    appendJaCodificado(sb, buf, igual + 1, tokenFim);
+                } else {
+                    appendUrlEncoded(sb, buf, igual + 1, tokenFim);
+                }
+            } else {
+                sb.append("prefix=");
+                appendUrlEncoded(sb, buf, i, tokenFim);
+            }
+            i = pularEspacos(buf, tokenFim, fim);
+        }
+    }
+
+    // cursor, start e end: as opções que recebem uma chave copiada da saída do SCAN
+    private static boolean opcaoDeChave(ByteBuffer buf, int inicio, int fim) {
+        switch (fim - inicio) {
+            case 6:
+                return igualIgnorandoCaixa(buf, inicio, "CURSOR");
+            case 5:
+                return igualIgnorandoCaixa(buf, inicio, "START");
+            case 3:
+                return igualIgnorandoCaixa(buf, inicio, "END");
+            default:
+                return false;
+        }
+    }
+
+    // Valor na forma codificada: escapes %XX e '+' vão como estão; o resto é codificado
+    private static void appendJaCodificado(StringBuilder sb, ByteBuffer buf, int inicio, int fim) {
+        for (int i = inicio; i < fim; i++) {
+            byte b = buf.get(i);
+            if (b == '%' && i + 2 < fim && hex(buf.get(i + 1)) && hex(buf.get(i + 2))) {
+                sb.append('%').append((char) buf.get(i + 1)).append((char) buf.get(i + 2));
+                i += 2;
+            } else if (b == '+') {
+                sb.append('+');
+            } else {
+                appendUrlEncoded(sb, buf, i, i + 1);
+            }
+        }
+    }
+
+    private static boolean hex(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F');
+    }
+
+    /**
+     * Codifica [inicio, fim) para query string, com as mesmas regras do
+     * URLEncoder (os bytes já são UTF-8, então basta escapar byte a byte).
+     */
+    static void appendUrlEncoded(StringBuilder sb, ByteBuffer buf, int inicio, int fim) {
+        for (int i = inicio; i < fim; i++) {
+            int b = buf.get(i) & 0xFF;
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                    || b == '.' || b == '-' || b == '*' || b == '_') {
+                sb.append((char) b);
+            } else if (b == ' ') {
+                sb.append('+');
+            } else {
+                sb.append('%').append(HEX[b >>> 4]).append(HEX[b & 0x0F]);
+            }
+        }
+    }
+}
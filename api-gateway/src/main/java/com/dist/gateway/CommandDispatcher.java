@@ -0,0 +1,578 @@
+package com.dist.gateway;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Caminho único do Gateway até as réplicas, usado pelos três front ends
+ * (HTTP, TCP e UDP).
+ *
+ *  - set/get escolhem o nó no ServiceRegistry e encaminham a query
+ *  - executar(Comando) atende os comandos de texto já interpretados
+ *  - enviar(...) é a chamada HTTP em si (também usada no fan-out do /append),
+ *    sempre pela conexão do nó no ConnectionManager. Com corpo, vira um
+ *    POST: o valor segue como bytes, sem passar por URL encoding
+ *
+ * set/get passam pelo limite adaptativo do AdmissionController; acima dele
+ * a resposta é OCUPADO sem chamar nenhuma réplica.
+ *
+ * GETs iguais e simultâneos são agrupados (single-flight): enquanto um GET
+ * de uma query está em andamento, os outros esperam o resultado dele em
+ * vez de fazer outra chamada. É o que segura a réplica quando uma chave
+ * quente recebe uma rajada de leituras.
+ *
+ * Toda chave de set/get é contada no HotKeys antes de qualquer outra coisa.
+ * Um GET de chave que o BloomFilter garante não existir volta 404 aqui
+ * mesmo; um SET liga os bits da chave antes de ser encaminhado.
+ *
+ * scan(...) não devolve o corpo: o stream da réplica é repassado a quem
+ * chamou conforme chega, então um SCAN grande não fica inteiro em memória.
+ */
+public class CommandDispatcher {
+
+    /** Resultado de uma chamada a uma réplica. */
+    public static class Resposta {
+        public enum Falha { NENHUMA, SEM_NO, UPSTREAM, INTERROMPIDA, CIRCUITO_ABERTO, SOBRECARGA, OCUPADO }
+
+        public final Falha falha;
+        public final int status;
+        public final String body;
+
+        Resposta(Falha falha, int status, String body) {
+            this.falha = falha;
+            this.status = status;
+            this.body = body;
+        }
+
+        public boolean ok() {
+            return falha == Falha.NENHUMA;
+        }
+    }
+
+    private static final Resposta SEM_NO = new Resposta(Resposta.Falha.SEM_NO, 503, null);
+    private static final Resposta OCUPADO = new Resposta(Resposta.Falha.OCUPADO, 503, "ERRO: busy");
+    private static final Resposta NAO_ENCONTRADA = new Resposta(Resposta.Falha.NENHUMA, 404, "Chave não encontrada");
+
+    // Página única do SCAN no UDP: cabe num datagrama com folga
+    private static final int SCAN_LIMITE_UDP = 100;
+    private static final int SCAN_BYTES_UDP = 60_000;
+
+    // GETs em andamento, pela query enviada à réplica
+    private static final Map<String, CompletableFuture<Resposta>> getsEmVoo = new ConcurrentHashMap<>();
+
+    /**
+     * Encaminha um SET ao líder. 'query' já vem codificada (key=...&value=...,
+     * ou op=cas|incr|append com os parâmetros da operação).
+     */
+    public static Resposta set(String query) {
+        return set(query, null);
+    }
+
+    /**
+     * SET com o valor no corpo (POST): 'query' tem só a chave e as opções,
+     * e o corpo é repassado ao líder conforme chega, sem virar String.
+     */
+    public static Resposta set(String query, HttpRequest.BodyPublisher corpo) {
+        HotKeys.ESCRITAS.registrar(query);
+        BloomFilter.CHAVES.adicionarDaQuery(query);
+        // Época e líder vão junto: a réplica recusa se já viu um líder mais
+        // novo, ou outro líder nessa mesma época.
+        // Se o líder mudar entre as duas leituras, pega o novo.
+        ServiceRegistry.NodeInfo leader;
+        long epoca;
+        do {
+            leader = ServiceRegistry.getLeaderAtivo();
+            if (leader == null) {
+                return SEM_NO;
+            }
+            epoca = ServiceRegistry.getEpocaDoLider(leader.id);
+        } while (epoca < 0);
+        if (!AdmissionController.ESCRITA.tentarAdquirir()) {
+            return OCUPADO;
+        }
+        System.out.println("[Gateway] Encaminhando SET para líder "
+                + leader.id + " (" + leader.baseUrl() + "), época " + epoca);
+        long inicio = System.nanoTime();
+        String comEpoca = (query == null || query.isEmpty() ? "" : query + "&")
+                + "epoch=" + epoca + "&leader=" + URLEncoder.encode(leader.id, StandardCharsets.UTF_8);
+        Resposta r = enviar(leader, "/set", comEpoca, corpo, Metrics.SET);
+        concluir(AdmissionController.ESCRITA, inicio, r);
+        return r;
+    }
+
+    /**
+     * Encaminha um GET a um nó ativo (round-robin), ou espera o GET igual
+     * que já estiver em andamento.
+     */
+    public static Resposta get(String query) {
+        HotKeys.LEITURAS.registrar(query);
+        if (BloomFilter.CHAVES.isPronto()) {
+            String chaveDecodificada = BloomFilter.chaveDaQuery(query);
+            if (chaveDecodificada != null && !BloomFilter.CHAVES.podeConter(chaveDecodificada)) {
+                Metrics.bloomNegativo();
+                return NAO_ENCONTRADA;
+            }
+        }
+        String chave = query == null ? "" : query;
+        CompletableFuture<Resposta> meu = new CompletableFuture<>();
+        CompletableFuture<Resposta> emAndamento = getsEmVoo.putIfAbsent(chave, meu);
+        if (emAndamento != null) {
+            Metrics.getAgrupado();
+            return aguardar(emAndamento);
+        }
+
+        Resposta r;
+        try {
+            r = buscar(query);
+        } catch (RuntimeException e) {
+            getsEmVoo.remove(chave, meu);
+            meu.completeExceptionally(e);
+            throw e;
+        }
+        // sai do mapa antes de completar: quem chegar agora faz uma leitura nova
+        getsEmVoo.remove(chave, meu);
+        meu.complete(r);
+        return r;
+    }
+
+    private static Resposta aguardar(CompletableFuture<Resposta> emAndamento) {
+        try {
+            return emAndamento.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Resposta(Resposta.Falha.INTERROMPIDA, 500, e.getMessage());
+        } catch (ExecutionException e) {
+            return new Resposta(Resposta.Falha.UPSTREAM, 502, String.valueOf(e.getCause()));
+        }
+    }
+
+    private static Resposta buscar(String query) {
+        ServiceRegistry.NodeInfo node = ServiceRegistry.getNodeParaGet();
+        if (node == null) {
+            return SEM_NO;
+        }
+        if (!AdmissionController.LEITURA.tentarAdquirir()) {
+            return OCUPADO;
+        }
+        System.out.println("[Gateway] Encaminhando GET para nó " + node.id +
+                " (" + node.baseUrl() + ")");
+        long inicio = System.nanoTime();
+        Resposta r = enviar(node, "/get", query, Metrics.GET);
+        concluir(AdmissionController.LEITURA, inicio, r);
+        return r;
+    }
+
+    // Recusas locais (circuito, vagas do nó) não dizem nada sobre a latência da réplica
+    private static void concluir(AdmissionController.LimiteAdaptativo limite, long inicio, Resposta r) {
+        switch (r.falha) {
+            case NENHUMA:
+                limite.liberar(inicio, false);
+                break;
+            case UPSTREAM:
+                limite.liberar(inicio, true);
+                break;
+            default:
+                limite.liberar();
+        }
+    }
+
+    /** Corpo de requisição lido direto de um stream (tamanho -1 = desconhecido, vai chunked). */
+    public static HttpRequest.BodyPublisher corpoDoStream(InputStream in, long tamanho) {
+        if (tamanho == 0) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+        HttpRequest.BodyPublisher stream = HttpRequest.BodyPublishers.ofInputStream(() -> in);
+        return tamanho > 0 ? HttpRequest.BodyPublishers.fromPublisher(stream, tamanho) : stream;
+    }
+
+    /** Chamada HTTP GET a um nó, medindo a latência no caminho de métrica informado. */
+    public static Resposta enviar(ServiceRegistry.NodeInfo node, String caminho, String query, String metrica) {
+        return enviar(node, caminho, query, null, metrica);
+    }
+
+    /** Como enviar(...), mas um POST com o corpo informado quando ele não é null. */
+    public static Resposta enviar(ServiceRegistry.NodeInfo node, String caminho, String query,
+                                  HttpRequest.BodyPublisher corpo, String metrica) {
+        return enviar(node, caminho, query, corpo, metrica, ConnectionManager.Trafego.CLIENTE);
+    }
+
+    /** Entrega de uma entrada de log a um follower, pelas vagas e conexões reservadas à replicação. */
+    public static Resposta replicar(ServiceRegistry.NodeInfo node, String query, HttpRequest.BodyPublisher corpo) {
+        return enviar(node, "/append", query, corpo, Metrics.APPEND, ConnectionManager.Trafego.REPLICACAO);
+    }
+
+    private static Resposta enviar(ServiceRegistry.NodeInfo node, String caminho, String query,
+                                   HttpRequest.BodyPublisher corpo, String metrica,
+                                   ConnectionManager.Trafego trafego) {
+        StringBuilder url = new StringBuilder(64).append(node.baseUrl()).append(caminho);
+        if (query != null && !query.isEmpty()) {
+            url.append('?').append(query);
+        }
+
+        ConnectionManager.Conexao conexao = ConnectionManager.para(node);
+        if (!conexao.adquirir(trafego)) {
+            return recusada(node, metrica);
+        }
+
+        long inicio = System.nanoTime();
+        boolean sucesso = false;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
+                    .uri(URI.create(url.toString()))
+                    .timeout(ConnectionManager.timeoutRequisicao);
+            HttpRequest request = (corpo != null ? builder.POST(corpo) : builder.GET()).build();
+
+            HttpResponse<String> response =
+                    conexao.de(trafego).client.send(request, HttpResponse.BodyHandlers.ofString());
+            sucesso = true;
+            Metrics.proxy(metrica).recordSince(inicio);
+            return new Resposta(Resposta.Falha.NENHUMA, response.statusCode(), response.body());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sucesso = true; // não é culpa do nó
+            Metrics.erro(metrica, e);
+            return new Resposta(Resposta.Falha.INTERROMPIDA, 500, e.getMessage());
+        } catch (Exception e) {
+            Metrics.erro(metrica, e);
+            // ConnectException costuma vir sem mensagem
+            String msg = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            return new Resposta(Resposta.Falha.UPSTREAM, 502, msg);
+        } finally {
+            conexao.liberar(trafego, sucesso);
+        }
+    }
+
+    // O ConnectionManager não deixou chamar o nó: circuito aberto ou sem vagas
+    private static Resposta recusada(ServiceRegistry.NodeInfo node, String metrica) {
+        Metrics.erro(metrica);
+        if (ConnectionManager.estado(node) != ConnectionManager.Estado.FECHADO) {
+            return new Resposta(Resposta.Falha.CIRCUITO_ABERTO, 503,
+                    "circuito aberto para o nó " + node.id);
+        }
+        return new Resposta(Resposta.Falha.SOBRECARGA, 503,
+                "limite de requisições em voo atingido para o nó " + node.id);
+    }
+
+    /** Recebe o corpo de um SCAN enquanto ele chega da réplica. */
+    public interface DestinoDoScan {
+        void receber(int status, InputStream corpo) throws IOException;
+    }
+
+    /**
+     * Encaminha um SCAN a um nó ativo e entrega o stream da resposta ao
+     * destino. 'query' já vem codificada (prefix, start, end, limit, cursor).
+     *
+     * Se o stream quebrar no meio, a resposta já começou e não há como
+     * trocar o status: o que chegou ao cliente fica sem a linha "# fim",
+     * e é isso que indica o corte. Nesse caso o retorno é NENHUMA.
+     *
+     * Passa pelo limite de leitura, mas sem amostra de latência: a duração
+     * de um SCAN depende do tamanho dele, não da saúde da réplica.
+     */
+    public static Resposta scan(String query, DestinoDoScan destino) {
+        ServiceRegistry.NodeInfo node = ServiceRegistry.getNodeParaGet();
+        if (node == null) {
+            return SEM_NO;
+        }
+        if (!AdmissionController.LEITURA.tentarAdquirir()) {
+            return OCUPADO;
+        }
+        try {
+            System.out.println("[Gateway] Encaminhando SCAN para nó " + node.id +
+                    " (" + node.baseUrl() + ")");
+            return encaminharScan(node, query, destino);
+        } finally {
+            AdmissionController.LEITURA.liberar();
+        }
+    }
+
+    private static Resposta encaminharScan(ServiceRegistry.NodeInfo node, String query, DestinoDoScan destino) {
+        StringBuilder url = new StringBuilder(64).append(node.baseUrl()).append("/scan");
+        if (query != null && !query.isEmpty()) {
+            url.append('?').append(query);
+        }
+
+        ConnectionManager.Conexao conexao = ConnectionManager.para(node);
+        if (!conexao.adquirir()) {
+            return recusada(node, Metrics.SCAN);
+        }
+
+        long inicio = System.nanoTime();
+        boolean sucesso = false;
+        boolean entregue = false;
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(url.toString()))
+                    .timeout(ConnectionManager.timeoutRequisicao)
+                    .GET()
+                    .build();
+
+            HttpResponse<InputStream> response =
+                    conexao.client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            sucesso = true;
+            try (InputStream corpo = response.body()) {
+                entregue = true;
+                destino.receber(response.statusCode(), corpo);
+            }
+            Metrics.proxy(Metrics.SCAN).recordSince(inicio);
+            return new Resposta(Resposta.Falha.NENHUMA, response.statusCode(), null);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sucesso = true; // não é culpa do nó
+            Metrics.erro(Metrics.SCAN, e);
+            return new Resposta(Resposta.Falha.INTERROMPIDA, 500, e.getMessage());
+        } catch (Exception e) {
+            Metrics.erro(Metrics.SCAN, e);
+            String msg = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            if (entregue) {
+                System.out.println("[Gateway] SCAN interrompido no meio do stream: " + msg);
+                return new Resposta(Resposta.Falha.NENHUMA, 200, null);
+            }
+            return new Resposta(Resposta.Falha.UPSTREAM, 502, msg);
+        } finally {
+            conexao.liberar(sucesso);
+        }
+    }
+
+    /**
+     * Monta a query de /scan a partir dos argumentos do comando de texto.
+     * O limite padrão vai antes: se o cliente passar limit=, o dele vale
+     * (na réplica vale o último parâmetro repetido).
+     */
+    static String queryDoScan(Comando cmd, int limitePadrao) {
+        StringBuilder q = new StringBuilder(48).append("limit=").append(limitePadrao);
+        cmd.appendOpcoesCodificadas(q);
+        return q.toString();
+    }
+
+    /**
+     * Executa um comando de texto (TCP/UDP) e devolve a resposta no formato
+     * desses protocolos ("ERRO..." em caso de falha).
+     */
+    public static String executar(Comando cmd) {
+        switch (cmd.tipo) {
+            case VAZIO:
+                return "ERRO: comando vazio";
+
+            case SET: {
+                if (cmd.argumentos < 2) return "ERRO: use SET chave valor [ttl]";
+                StringBuilder q = new StringBuilder(32).append("key=");
+                cmd.appendChaveCodificada(q);
+                q.append("&value=");
+                cmd.appendValorCodificado(q);
+                if (cmd.argumentos >= 3) {
+                    q.append("&ttl=");
+                    cmd.appendExtraCodificado(q);
+                }
+                return respostaDeEscrita("SET", set(q.toString()));
+            }
+
+            case CAS: {
+                if (cmd.argumentos < 3) return "ERRO: use CAS chave esperado novo";
+                StringBuilder q = new StringBuilder(48).append("op=cas&key=");
+                cmd.appendChaveCodificada(q);
+                q.append("&expected=");
+                cmd.appendValorCodificado(q);
+                q.append("&value=");
+                cmd.appendExtraCodificado(q);
+                return respostaDeEscrita("CAS", set(q.toString()));
+            }
+
+            case INCR: {
+                if (cmd.argumentos < 1) return "ERRO: use INCR chave [delta]";
+                StringBuilder q = new StringBuilder(32).append("op=incr&key=");
+                cmd.appendChaveCodificada(q);
+                if (cmd.argumentos >= 2) {
+                    q.append("&delta=");
+                    cmd.appendValorCodificado(q);
+                }
+                return respostaDeEscrita("INCR", set(q.toString()));
+            }
+
+            case APPEND: {
+                if (cmd.argumentos < 2) return "ERRO: use APPEND chave valor";
+                StringBuilder q = new StringBuilder(32).append("op=append&key=");
+                cmd.appendChaveCodificada(q);
+                q.append("&value=");
+                cmd.appendValorCodificado(q);
+                return respostaDeEscrita("APPEND", set(q.toString()));
+            }
+
+            case GET: {
+                if (cmd.argumentos < 1) return "ERRO: use GET chave";
+                StringBuilder q = new StringBuilder(24).append("key=");
+                cmd.appendChaveCodificada(q);
+                Resposta r = get(q.toString());
+                if (r.falha == Resposta.Falha.SEM_NO) return "ERRO: nenhum nó ativo";
+                if (r.falha == Resposta.Falha.OCUPADO) return r.body;
+                if (!r.ok()) return "ERRO GET: " + r.body;
+                return r.body;
+            }
+
+            case SCAN:
+                return scanEmUmaPagina(cmd);
+
+            case STATUS:
+                return gerarStatus();
+
+            default:
+                return "ERRO: comando desconhecido";
+        }
+    }
+
+    // Respostas de CAS/INCR/APPEND recusados (409/400) vêm do líder e passam como estão
+    private static String respostaDeEscrita(String nome, Resposta r) {
+        if (r.falha == Resposta.Falha.SEM_NO) return "ERRO: nenhum líder ativo";
+        if (r.falha == Resposta.Falha.OCUPADO) return r.body;
+        if (!r.ok()) return "ERRO " + nome + ": " + r.body;
+        return r.body;
+    }
+
+    /**
+     * SCAN para quem só aceita uma resposta (UDP): no máximo uma página que
+     * caiba num datagrama. Se a página não couber, é cortada na última linha
+     * completa e termina com "# cursor=" para o cliente pedir o resto.
+     */
+    private static String scanEmUmaPagina(Comando cmd) {
+        byte[] pagina = new byte[SCAN_BYTES_UDP];
+        int[] lidos = {0};
+        boolean[] cortada = {false};
+        Resposta r = scan(queryDoScan(cmd, SCAN_LIMITE_UDP), (status, corpo) -> {
+            int n;
+            while (lidos[0] < pagina.length
+                    && (n = corpo.read(pagina, lidos[0], pagina.length - lidos[0])) > 0) {
+                lidos[0] += n;
+            }
+            cortada[0] = lidos[0] == pagina.length && corpo.read() >= 0;
+        });
+        if (r.falha == Resposta.Falha.SEM_NO) return "ERRO: nenhum nó ativo";
+        if (r.falha == Resposta.Falha.OCUPADO) return r.body;
+        if (!r.ok()) return "ERRO SCAN: " + r.body;
+
+        String texto;
+        if (cortada[0]) {
+            int ultimaLinha = ultimaQuebra(pagina, lidos[0]);
+            if (ultimaLinha < 0) {
+                return "ERRO SCAN: registro maior que um datagrama, use TCP ou HTTP";
+            }
+            int anterior = ultimaQuebra(pagina, ultimaLinha);
+            String linha = new String(pagina, anterior + 1, ultimaLinha - anterior - 1, StandardCharsets.UTF_8);
+            int igual = linha.indexOf('=');
+            String chave = igual < 0 ? linha : linha.substring(0, igual); // já vem codificada
+            texto = new String(pagina, 0, ultimaLinha + 1, StandardCharsets.UTF_8) + "# cursor=" + chave;
+        } else {
+            texto = new String(pagina, 0, lidos[0], StandardCharsets.UTF_8);
+        }
+        if (r.status != 200) return "ERRO SCAN: " + texto.trim();
+        return texto.endsWith("\n") ? texto.substring(0, texto.length() - 1) : texto;
+    }
+
+    private static int ultimaQuebra(byte[] b, int ate) {
+        for (int i = ate - 1; i >= 0; i--) {
+            if (b[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Status do cluster em JSON, numa linha só (é a mesma resposta do /status
+     * e do STATUS dos protocolos de texto):
+     *
+     *   {"gateway":"G8080","epoch":3,"leader":"A1","nodes":[{"id":"A1","role":"LEADER",...,"lag":0,...}],"hotKeys":{...}}
+     *
+     * O lag de cada nó é o último índice do líder menos o lastAppliedIndex do
+     * nó, ambos do último heartbeat; sem heartbeat binário dos dois, é null.
+     */
+    public static String gerarStatus() {
+        List<ServiceRegistry.NodeInfo> nos = ServiceRegistry.getTodosOsNos();
+        String liderId = ServiceRegistry.getLiderAtualId();
+        ServiceRegistry.Carga doLider = null;
+        for (ServiceRegistry.NodeInfo info : nos) {
+            if (info.id.equals(liderId)) {
+                doLider = info.carga;
+            }
+        }
+
+        long agora = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder(256 + 320 * nos.size());
+        sb.append("{\"gateway\":");
+        appendJson(sb, Gossip.getOrigem());
+        sb.append(",\"epoch\":").append(ServiceRegistry.getEpoca());
+        sb.append(",\"leader\":");
+        appendJson(sb, liderId);
+        sb.append(",\"nodes\":[");
+        for (int i = 0; i < nos.size(); i++) {
+            ServiceRegistry.NodeInfo info = nos.get(i);
+            ServiceRegistry.Carga c = info.carga;
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":");
+            appendJson(sb, info.id);
+            sb.append(",\"role\":");
+            appendJson(sb, info.role);
+            sb.append(",\"address\":");
+            appendJson(sb, info.baseUrl());
+            sb.append(",\"active\":").append(info.ativo);
+            sb.append(",\"circuit\":");
+            appendJson(sb, ConnectionManager.estado(info).name());
+            sb.append(",\"msSinceHeartbeat\":").append(agora - info.lastHeartbeatMillis);
+            if (c == null) {
+                sb.append(",\"lastLogIndex\":null,\"lastAppliedIndex\":null,\"lag\":null")
+                  .append(",\"queueDepth\":null,\"p99Ms\":null,\"heapUsedBytes\":null,\"heapMaxBytes\":null}");
+                continue;
+            }
+            sb.append(",\"lastLogIndex\":").append(c.ultimoIndice);
+            sb.append(",\"lastAppliedIndex\":").append(c.aplicado);
+            sb.append(",\"lag\":");
+            if (doLider == null) {
+                sb.append("null");
+            } else {
+                sb.append(Math.max(0, doLider.ultimoIndice - c.aplicado));
+            }
+            sb.append(",\"queueDepth\":").append(c.fila);
+            sb.append(",\"p99Ms\":").append(c.p99Micros / 1000.0);
+            sb.append(",\"heapUsedBytes\":").append(c.heapUsado);
+            sb.append(",\"heapMaxBytes\":").append(c.heapMax);
+            sb.append('}');
+        }
+        sb.append("],\"hotKeys\":");
+        HotKeys.escreverJson(sb, 5);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /** String JSON entre aspas (ou null), escapando o necessário. */
+    static void appendJson(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                sb.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                sb.append(String.format("\\u%04x", (int) ch));
+            } else {
+                sb.append(ch);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,228 @@
+package com.dist.gateway;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Conexões do Gateway com cada nó, indexadas pelo ServiceRegistry.NodeInfo.
+ *
+ * Para cada nó:
+ *  - um HttpClient próprio (HTTP/1.1, conexões keep-alive reaproveitadas)
+ *  - um limite de requisições em voo; acima dele a chamada falha na hora
+ *  - para a replicação (/append), outro HttpClient e outro limite: GETs de
+ *    clientes ocupando todas as vagas do nó não atrasam a replicação
+ *  - um circuit breaker: depois de N falhas seguidas de conexão/timeout o
+ *    circuito abre e as chamadas falham sem tocar na rede; passado o tempo
+ *    de espera, uma chamada de teste decide se ele fecha de novo
+ *
+ * Quando um circuito abre, o ServiceRegistry é avisado para tirar o nó do
+ * round-robin de GET (e eleger outro líder, se for o caso).
+ */
+public class ConnectionManager {
+
+    // Configuráveis pela linha de comando do Gateway
+    static volatile int maxEmVooPorNo = 64;
+    static volatile int maxReplicacaoEmVooPorNo = 64;
+    static volatile Duration timeoutRequisicao = Duration.ofSeconds(5);
+    static volatile Duration timeoutConexao = Duration.ofSeconds(1);
+    static volatile int falhasParaAbrir = 5;
+    static volatile Duration tempoAberto = Duration.ofSeconds(5);
+
+    private static final Map<String, Conexao> conexoes = new ConcurrentHashMap<>();
+
+    public enum Estado { FECHADO, ABERTO, MEIO_ABERTO }
+
+    /** Com qual orçamento de vagas (e qual HttpClient) a chamada sai. */
+    public enum Trafego { CLIENTE, REPLICACAO }
+
+    /** Conexão com um nó; recriada se o nó se registrar de novo (outro NodeInfo). */
+    public static Conexao para(ServiceRegistry.NodeInfo node) {
+        Conexao c = conexoes.get(node.id);
+        if (c != null && c.node == node) {
+            return c;
+        }
+        return conexoes.compute(node.id, (id, atual) ->
+                atual != null && atual.node == node ? atual : new Conexao(node));
+    }
+
+    /** true se o nó pode receber tráfego (circuito fechado, ou aberto mas já na hora de testar). */
+    public static boolean aceitaTrafego(ServiceRegistry.NodeInfo node) {
+        Conexao c = conexoes.get(node.id);
+        return c == null || c.node != node || c.breaker.podeTestar();
+    }
+
+    public static Estado estado(ServiceRegistry.NodeInfo node) {
+        Conexao c = conexoes.get(node.id);
+        return c == null || c.node != node ? Estado.FECHADO : c.breaker.estado.get();
+    }
+
+    static void writePrometheus(StringBuilder sb) {
+        sb.append("# HELP gateway_node_in_flight Requisições em voo por nó\n");
+        sb.append("# TYPE gateway_node_in_flight gauge\n");
+        for (Conexao c : conexoes.values()) {
+            sb.append("gateway_node_in_flight{node=\"").append(c.node.id).append("\",lane=\"client\"} ")
+              .append(c.cliente.emVoo()).append('\n');
+            sb.append("gateway_node_in_flight{node=\"").append(c.node.id).append("\",lane=\"replication\"} ")
+              .append(c.replicacao.emVoo()).append('\n');
+        }
+        sb.append("# HELP gateway_circuit_open Circuito do nó aberto (1) ou não (0)\n");
+        sb.append("# TYPE gateway_circuit_open gauge\n");
+        for (Conexao c : conexoes.values()) {
+            sb.append("gateway_circuit_open{node=\"").append(c.node.id).append("\"} ")
+              .append(c.breaker.estado.get() == Estado.ABERTO ? 1 : 0).append('\n');
+        }
+        sb.append("# HELP gateway_circuit_trips_total Vezes que o circuito do nó abriu\n");
+        sb.append("# TYPE gateway_circuit_trips_total counter\n");
+        for (Conexao c : conexoes.values()) {
+            sb.append("gateway_circuit_trips_total{node=\"").append(c.node.id).append("\"} ")
+              .append(c.breaker.aberturas.sum()).append('\n');
+        }
+        sb.append("# HELP gateway_rejected_total Chamadas recusadas sem ir à rede, por motivo\n");
+        sb.append("# TYPE gateway_rejected_total counter\n");
+        for (Conexao c : conexoes.values()) {
+            sb.append("gateway_rejected_total{node=\"").append(c.node.id).append("\",reason=\"circuit\"} ")
+              .append(c.recusadasCircuito.sum()).append('\n');
+            sb.append("gateway_rejected_total{node=\"").append(c.node.id).append("\",reason=\"in_flight\"} ")
+              .append(c.cliente.recusadas.sum()).append('\n');
+            sb.append("gateway_rejected_total{node=\"").append(c.node.id).append("\",reason=\"replication_in_flight\"} ")
+              .append(c.replicacao.recusadas.sum()).append('\n');
+        }
+    }
+
+    public static class Conexao {
+        final ServiceRegistry.NodeInfo node;
+        final HttpClient client;
+        final Vagas cliente;
+        final Vagas replicacao;
+        final CircuitBreaker breaker;
+        final LongAdder recusadasCircuito = new LongAdder();
+
+        Conexao(ServiceRegistry.NodeInfo node) {
+            this.node = node;
+            this.cliente = new Vagas(novoClient(), maxEmVooPorNo);
+            this.replicacao = new Vagas(novoClient(), maxReplicacaoEmVooPorNo);
+            this.client = cliente.client;
+            this.breaker = new CircuitBreaker(node);
+        }
+
+        private static HttpClient novoClient() {
+            return HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(timeoutConexao)
+                    .build();
+        }
+
+        Vagas de(Trafego trafego) {
+            return trafego == Trafego.REPLICACAO ? replicacao : cliente;
+        }
+
+        /** Tenta reservar uma vaga de cliente; false se o circuito está aberto ou o nó já está no limite. */
+        boolean adquirir() {
+            return adquirir(Trafego.CLIENTE);
+        }
+
+        boolean adquirir(Trafego trafego) {
+            if (!breaker.permitir()) {
+                recusadasCircuito.increment();
+                return false;
+            }
+            Vagas v = de(trafego);
+            if (!v.semaforo.tryAcquire()) {
+                breaker.liberarTeste();
+                v.recusadas.increment();
+                return false;
+            }
+            return true;
+        }
+
+        void liberar(boolean sucesso) {
+            liberar(Trafego.CLIENTE, sucesso);
+        }
+
+        void liberar(Trafego trafego, boolean sucesso) {
+            de(trafego).semaforo.release();
+            if (sucesso) {
+                breaker.sucesso();
+            } else {
+                breaker.falha();
+            }
+        }
+    }
+
+    /** Orçamento de requisições em voo de um tipo de tráfego para um nó. */
+    static final class Vagas {
+        final HttpClient client;
+        private final Semaphore semaforo;
+        private final int limite;
+        final LongAdder recusadas = new LongAdder();
+
+        Vagas(HttpClient client, int limite) {
+            this.client = client;
+            this.limite = limite;
+            this.semaforo = new Semaphore(limite);
+        }
+
+        int emVoo() {
+            return limite - semaforo.availablePermits();
+        }
+    }
+
+    static class CircuitBreaker {
+        private final ServiceRegistry.NodeInfo node;
+        final AtomicReference<Estado> estado = new AtomicReference<>(Estado.FECHADO);
+        private final AtomicInteger falhasSeguidas = new AtomicInteger();
+        private final AtomicLong abertoAte = new AtomicLong();
+        final LongAdder aberturas = new LongAdder();
+
+        CircuitBreaker(ServiceRegistry.NodeInfo node) {
+            this.node = node;
+        }
+
+        /** FECHADO deixa passar; ABERTO só deixa passar uma chamada de teste quando o prazo vence. */
+        boolean permitir() {
+            Estado e = estado.get();
+            if (e == Estado.FECHADO) return true;
+            if (e == Estado.ABERTO && System.nanoTime() >= abertoAte.get()) {
+                return estado.compareAndSet(Estado.ABERTO, Estado.MEIO_ABERTO);
+            }
+            return false; // MEIO_ABERTO: já tem um teste em andamento
+        }
+
+        boolean podeTestar() {
+            Estado e = estado.get();
+            return e == Estado.FECHADO || (e == Estado.ABERTO && System.nanoTime() >= abertoAte.get());
+        }
+
+        /** Devolve a vaga de teste se a chamada nem chegou a sair. */
+        void liberarTeste() {
+            estado.compareAndSet(Estado.MEIO_ABERTO, Estado.ABERTO);
+        }
+
+        void sucesso() {
+            falhasSeguidas.set(0);
+            if (estado.getAndSet(Estado.FECHADO) != Estado.FECHADO) {
+                System.out.println("[Gateway] Circuito do nó " + node.id + " FECHADO novamente");
+            }
+        }
+
+        void falha() {
+            int n = falhasSeguidas.incrementAndGet();
+            Estado e = estado.get();
+            boolean abrir = (e == Estado.MEIO_ABERTO) || (e == Estado.FECHADO && n >= falhasParaAbrir);
+            if (abrir && estado.compareAndSet(e, Estado.ABERTO)) {
+                abertoAte.set(System.nanoTime() + tempoAberto.toNanos());
+                aberturas.increment();
+                System.out.println("[Gateway] Circuito do nó " + node.id + " ABERTO após "
+                        + n + " falhas seguidas");
+                ServiceRegistry.notificarCircuitoAberto(node);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.dist.gateway;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Corpo de um POST de /append, lido inteiro num buffer por thread e
+ * limitado a MAX_VALOR_BYTES (o mesmo limite de valor das réplicas). Os
+ * bytes vão como estão para cada follower, sem passar por String.
+ *
+ * O buffer cresce conforme o corpo, mas acima de BUFFER_RETIDO_MAX é usado
+ * só naquele pedido e não fica preso na thread. Por isso os bytes só valem
+ * até a próxima leitura na mesma thread.
+ */
+final class CorpoDoPost {
+
+    static final int MAX_VALOR_BYTES = 64 * 1024 * 1024;
+
+    private static final int BUFFER_RETIDO_MAX = 1024 * 1024;
+    private static final ThreadLocal<byte[]> BUFFER =
+            ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
+    final byte[] bytes;
+    final int tamanho;
+
+    private CorpoDoPost(byte[] bytes, int tamanho) {
+        this.bytes = bytes;
+        this.tamanho = tamanho;
+    }
+
+    /** Lê o corpo inteiro; null se passar de MAX_VALOR_BYTES. */
+    static CorpoDoPost ler(InputStream corpo) throws IOException {
+        byte[] buf = BUFFER.get();
+        int n = 0;
+        try (InputStream in = corpo) {
+            int lidos;
+            while ((lidos = in.read(buf, n, buf.length - n)) >= 0) {
+                n += lidos;
+                if (n == buf.length) {
+                    if (buf.length >= MAX_VALOR_BYTES) {
+                        // exatamente no limite ainda vale: só recusa se vier mais um byte
+                        if (in.read() >= 0) {
+                            return null;
+                        }
+                        break;
+                    }
+                    buf = Arrays.copyOf(buf, Math.min(MAX_VALOR_BYTES, buf.length * 2));
+                }
+            }
+        }
+        if (buf.length <= BUFFER_RETIDO_MAX) {
+            BUFFER.set(buf);
+        }
+        return new CorpoDoPost(buf, n);
+    }
+}
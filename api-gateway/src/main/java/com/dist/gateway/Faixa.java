@@ -0,0 +1,100 @@
+package com.dist.gateway;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Faixa de execução do HTTP do Gateway: um pool próprio, com limite de
+ * threads e de fila, para um grupo de endpoints.
+ *
+ * O HttpServer só lê o pedido e entrega a troca à faixa do endpoint; com
+ * a faixa cheia, a resposta é 503 na hora. Assim uma rajada de /get de
+ * clientes enche só a faixa de clientes, e o /append da replicação
+ * continua tendo threads e fila próprias.
+ */
+public class Faixa {
+
+    private static final byte[] CHEIA = "Gateway sobrecarregado, tente novamente.".getBytes(StandardCharsets.UTF_8);
+
+    // Todas as faixas criadas, para o /metrics
+    private static final List<Faixa> TODAS = new CopyOnWriteArrayList<>();
+
+    final String nome;
+    private final ThreadPoolExecutor executor;
+    final LongAdder recusadas = new LongAdder();
+
+    Faixa(String nome, int threads, int fila) {
+        this.nome = nome;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(fila),
+                r -> new Thread(r, "faixa-" + nome + "-" + seq.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        TODAS.add(this);
+    }
+
+    /** Handler que roda o original nesta faixa. */
+    HttpHandler envolver(HttpHandler handler) {
+        return exchange -> {
+            try {
+                executor.execute(() -> executar(handler, exchange));
+            } catch (RejectedExecutionException e) {
+                recusadas.increment();
+                recusar(exchange);
+            }
+        };
+    }
+
+    private void executar(HttpHandler handler, HttpExchange exchange) {
+        try {
+            handler.handle(exchange);
+        } catch (Exception e) {
+            System.out.println("[Gateway] Erro na faixa " + nome + ": " + e.getMessage());
+            exchange.close();
+        }
+    }
+
+    private static void recusar(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, CHEIA.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(CHEIA);
+        }
+    }
+
+    static void writePrometheus(StringBuilder sb) {
+        List<Faixa> faixas = TODAS;
+        sb.append("# HELP gateway_lane_active Threads ocupadas por faixa de execução\n");
+        sb.append("# TYPE gateway_lane_active gauge\n");
+        for (Faixa f : faixas) {
+            sb.append("gateway_lane_active{lane=\"").append(f.nome).append("\"} ")
+              .append(f.executor.getActiveCount()).append('\n');
+        }
+        sb.append("# HELP gateway_lane_queued Pedidos esperando na fila da faixa\n");
+        sb.append("# TYPE gateway_lane_queued gauge\n");
+        for (Faixa f : faixas) {
+            sb.append("gateway_lane_queued{lane=\"").append(f.nome).append("\"} ")
+              .append(f.executor.getQueue().size()).append('\n');
+        }
+        sb.append("# HELP gateway_lane_rejected_total Pedidos recusados com a faixa cheia\n");
+        sb.append("# TYPE gateway_lane_rejected_total counter\n");
+        for (Faixa f : faixas) {
+            sb.append("gateway_lane_rejected_total{lane=\"").append(f.nome).append("\"} ")
+              .append(f.recusadas.sum()).append('\n');
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.dist.gateway;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gossip entre Gateways (--peers=host:portaUdp,...).
+ *
+ * Cada instância manda a sua visão do cluster para as outras a cada
+ * segundo e logo depois de cada eleição. É uma linha num datagrama, para a
+ * porta de REGISTER/HEARTBEAT do outro Gateway:
+ *
+ *   GOSSIP;origem;época;líder;id@ip:porta,id@ip:porta,...
+ *
+ * Os nós mandam heartbeat para todos os Gateways, então cada um decide
+ * sozinho quem está vivo. O gossip serve para duas coisas:
+ *  - um Gateway que acabou de subir conhece os nós sem esperar REGISTER
+ *  - todos concordam sobre o líder: cada eleição aumenta a época, e vale a
+ *    maior; na mesma época (eleições simultâneas) vale o líder de menor id
+ */
+public class Gossip {
+
+    private static final long INTERVALO_MS = 1000;
+
+    private static volatile String origem = "G8080";
+    private static volatile List<InetSocketAddress> peers = List.of();
+    private static DatagramSocket socket;
+
+    /** Configura e inicia o envio periódico; sem peers não faz nada. */
+    static synchronized void iniciar(String id, String listaDePeers) throws IOException {
+        origem = id;
+        List<InetSocketAddress> lista = new ArrayList<>();
+        if (listaDePeers != null && !listaDePeers.isBlank()) {
+            for (String p : listaDePeers.split(",")) {
+                int sep = p.lastIndexOf(':');
+                lista.add(new InetSocketAddress(p.substring(0, sep).trim(),
+                        Integer.parseInt(p.substring(sep + 1).trim())));
+            }
+        }
+        peers = List.copyOf(lista);
+        if (peers.isEmpty()) {
+            return;
+        }
+        socket = new DatagramSocket();
+
+        Thread t = new Thread(() -> {
+            while (true) {
+                anunciar();
+                try {
+                    Thread.sleep(INTERVALO_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "gossip");
+        t.setDaemon(true);
+        t.start();
+        System.out.println("[Gateway] Gossip iniciado como " + origem + " com " + peers);
+    }
+
+    static String getOrigem() {
+        return origem;
+    }
+
+    /** Manda a visão atual para todos os peers. */
+    static void anunciar() {
+        List<InetSocketAddress> destinos = peers;
+        if (destinos.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("GOSSIP;").append(origem)
+          .append(';').append(ServiceRegistry.getEpoca())
+          .append(';').append(ServiceRegistry.getLiderAtualId() == null ? "-" : ServiceRegistry.getLiderAtualId())
+          .append(';');
+        boolean primeiro = true;
+        for (ServiceRegistry.NodeInfo n : ServiceRegistry.getTodosOsNos()) {
+            if (!primeiro) {
+                sb.append(',');
+            }
+            primeiro = false;
+            sb.append(n.id).append('@').append(n.ip).append(':').append(n.port);
+        }
+        byte[] dados = sb.toString().getBytes(StandardCharsets.UTF_8);
+        for (InetSocketAddress destino : destinos) {
+            try {
+                socket.send(new DatagramPacket(dados, dados.length, destino));
+            } catch (IOException e) {
+                System.out.println("[Gateway] Erro no gossip para " + destino + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Chamado pelo UDPRegisterServer com uma mensagem GOSSIP;... */
+    static void receber(String msg) {
+        String[] parts = msg.split(";", -1);
+        if (parts.length != 5) {
+            System.out.println("[Gateway] Formato inválido de GOSSIP: " + msg);
+            return;
+        }
+        if (parts[1].equals(origem)) {
+            return;
+        }
+        long epoca;
+        try {
+            epoca = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            System.out.println("[Gateway] Época inválida no GOSSIP: " + parts[2]);
+            return;
+        }
+        String lider = parts[3].equals("-") ? null : parts[3];
+
+        List<String[]> membros = new ArrayList<>();
+        if (!parts[4].isEmpty()) {
+            for (String m : parts[4].split(",")) {
+                int arroba = m.indexOf('@');
+                int sep = m.lastIndexOf(':');
+                if (arroba <= 0 || sep < arroba || !portaValida(m.substring(sep + 1))) {
+                    System.out.println("[Gateway] Membro inválido no GOSSIP de " + parts[1] + ": " + m);
+                    continue;
+                }
+                membros.add(new String[]{m.substring(0, arroba), m.substring(arroba + 1, sep), m.substring(sep + 1)});
+            }
+        }
+        ServiceRegistry.aplicarGossip(parts[1], epoca, lider, membros);
+    }
+
+    private static boolean portaValida(String porta) {
+        try {
+            int p = Integer.parseInt(porta);
+            return p > 0 && p <= 65535;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private Gossip() {
+    }
+}
@@ -0,0 +1,348 @@
+package com.dist.gateway;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Detecção de chaves quentes no Gateway.
+ *
+ * Toda chave de GET e de SET que passa pelo CommandDispatcher alimenta um
+ * Count-Min Sketch (memória fixa, incremento lock-free em AtomicLongArray).
+ * Quando a estimativa de uma chave alcança o menor valor do top-K, ela
+ * entra num mapa pequeno de candidatas, podado de volta para K quando
+ * passa de 2K. A chave só vira String nesse momento; no caminho comum
+ * (inclusive para as chaves que já são candidatas) o custo é um hash,
+ * quatro incrementos atômicos e uma varredura de até 2K longs.
+ *
+ * A contagem é feita em janelas de 10 s; o top-K e as taxas somam a janela
+ * atual com a anterior, então refletem os últimos 10–20 s.
+ *
+ * Exposto em /hotkeys e num resumo no /status.
+ */
+public class HotKeys {
+
+    // Configurável pela linha de comando do Gateway
+    static volatile int k = 20;
+
+    private static final long JANELA_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    public static final HotKeys LEITURAS = new HotKeys("GET");
+    public static final HotKeys ESCRITAS = new HotKeys("SET");
+
+    private final String nome;
+    private volatile Janela atual = new Janela(System.nanoTime());
+    private volatile Janela anterior;
+    private final ReentrantLock rotacao = new ReentrantLock();
+
+    private HotKeys(String nome) {
+        this.nome = nome;
+    }
+
+    /** Uma chave do top-K com sua contagem estimada e a taxa aproximada. */
+    public static class Entrada {
+        public final String chave;
+        public final long contagem;
+        public final double porSegundo;
+
+        Entrada(String chave, long contagem, double porSegundo) {
+            this.chave = chave;
+            this.contagem = contagem;
+            this.porSegundo = porSegundo;
+        }
+    }
+
+    /** Conta a chave do parâmetro key= da query (ainda codificada). */
+    public void registrar(String query) {
+        if (query == null) {
+            return;
+        }
+        int inicio = inicioDaChave(query);
+        if (inicio < 0) {
+            return;
+        }
+        int fim = query.indexOf('&', inicio);
+        if (fim < 0) {
+            fim = query.length();
+        }
+
+        long h = hash(query, inicio, fim);
+        Janela j = janelaAtual();
+        j.total.increment();
+        long estimativa = j.sketch.incrementar(h);
+        if (estimativa >= j.limiar && !j.ehCandidata(h)) {
+            j.adicionar(query.substring(inicio, fim), h);
+        }
+    }
+
+    /** As n chaves mais frequentes das duas últimas janelas, da mais quente para a menos. */
+    public List<Entrada> top(int n) {
+        Janela cur = janelaAtual();
+        Janela prev = anterior;
+        double segundos = segundosCobertos(cur, prev);
+
+        Set<String> chaves = new HashSet<>(cur.candidatas.keySet());
+        if (prev != null) {
+            chaves.addAll(prev.candidatas.keySet());
+        }
+
+        List<Entrada> lista = new ArrayList<>(chaves.size());
+        for (String chave : chaves) {
+            long h = hash(chave, 0, chave.length());
+            long contagem = cur.sketch.estimar(h) + (prev != null ? prev.sketch.estimar(h) : 0);
+            lista.add(new Entrada(decodificar(chave), contagem, contagem / segundos));
+        }
+        lista.sort((a, b) -> Long.compare(b.contagem, a.contagem));
+        return lista.size() > n ? new ArrayList<>(lista.subList(0, n)) : lista;
+    }
+
+    /** Requisições por segundo (todas as chaves) nas duas últimas janelas. */
+    public double taxaTotal() {
+        Janela cur = janelaAtual();
+        Janela prev = anterior;
+        long total = cur.total.sum() + (prev != null ? prev.total.sum() : 0);
+        return total / segundosCobertos(cur, prev);
+    }
+
+    private static double segundosCobertos(Janela cur, Janela prev) {
+        long desde = prev != null ? prev.inicio : cur.inicio;
+        return Math.max(1e-3, (System.nanoTime() - desde) / 1e9);
+    }
+
+    private Janela janelaAtual() {
+        Janela j = atual;
+        long agora = System.nanoTime();
+        if (agora - j.inicio < JANELA_NANOS || !rotacao.tryLock()) {
+            return j;
+        }
+        try {
+            j = atual;
+            if (agora - j.inicio >= JANELA_NANOS) {
+                // sem tráfego por mais de uma janela, a anterior já não vale nada
+                anterior = agora - j.inicio < 2 * JANELA_NANOS ? j : null;
+                j = new Janela(agora);
+                atual = j;
+            }
+            return j;
+        } finally {
+            rotacao.unlock();
+        }
+    }
+
+    private static int inicioDaChave(String query) {
+        if (query.startsWith("key=")) {
+            return 4;
+        }
+        int i = query.indexOf("&key=");
+        return i < 0 ? -1 : i + 5;
+    }
+
+    // FNV-1a de 64 bits sobre os chars da chave codificada
+    private static long hash(String s, int inicio, int fim) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = inicio; i < fim; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h ^ (h >>> 29);
+    }
+
+    private static String decodificar(String chave) {
+        try {
+            return URLDecoder.decode(chave, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return chave;
+        }
+    }
+
+    /** Resumo em texto usado pelo /hotkeys e pelo /status. */
+    static void escreverResumo(StringBuilder sb, int n) {
+        for (HotKeys hk : new HotKeys[]{LEITURAS, ESCRITAS}) {
+            sb.append(hk.nome).append(String.format(" (~%.1f req/s no total):%n", hk.taxaTotal()));
+            List<Entrada> top = hk.top(n);
+            if (top.isEmpty()) {
+                sb.append("  (nenhuma)\n");
+            }
+            for (Entrada e : top) {
+                sb.append(String.format("  %-32s ~%.1f req/s  (%d)%n", e.chave, e.porSegundo, e.contagem));
+            }
+        }
+    }
+
+    /** Mesmo resumo em JSON: {"GET":{"rate":..,"top":[{"key":..,"rate":..,"count":..}]},"SET":{...}} */
+    static void escreverJson(StringBuilder sb, int n) {
+        sb.append('{');
+        boolean primeiro = true;
+        for (HotKeys hk : new HotKeys[]{LEITURAS, ESCRITAS}) {
+            if (!primeiro) {
+                sb.append(',');
+            }
+            primeiro = false;
+            CommandDispatcher.appendJson(sb, hk.nome);
+            sb.append(":{\"rate\":").append(arredondar(hk.taxaTotal())).append(",\"top\":[");
+            List<Entrada> top = hk.top(n);
+            for (int i = 0; i < top.size(); i++) {
+                Entrada e = top.get(i);
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append("{\"key\":");
+                CommandDispatcher.appendJson(sb, e.chave);
+                sb.append(",\"rate\":").append(arredondar(e.porSegundo))
+                  .append(",\"count\":").append(e.contagem).append('}');
+            }
+            sb.append("]}");
+        }
+        sb.append('}');
+    }
+
+    private static double arredondar(double taxa) {
+        return Math.round(taxa * 10) / 10.0;
+    }
+
+    private static final class Janela {
+        final long inicio;
+        final CountMin sketch = new CountMin();
+        final LongAdder total = new LongAdder();
+        final Map<String, Long> candidatas = new ConcurrentHashMap<>(); // chave -> hash
+        private final ReentrantLock poda = new ReentrantLock();
+        private volatile long[] hashesCandidatas = new long[0];
+        volatile long limiar = 1;
+
+        Janela(long inicio) {
+            this.inicio = inicio;
+        }
+
+        // No máximo 2K hashes: uma varredura linear sai mais barata que criar a String
+        boolean ehCandidata(long h) {
+            for (long c : hashesCandidatas) {
+                if (c == h) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void adicionar(String chave, long h) {
+            poda.lock();
+            try {
+                if (candidatas.putIfAbsent(chave, h) != null) {
+                    return;
+                }
+                if (candidatas.size() > 2 * k) {
+                    podar();
+                }
+                long[] hashes = new long[candidatas.size()];
+                int i = 0;
+                for (long c : candidatas.values()) {
+                    hashes[i++] = c;
+                }
+                hashesCandidatas = hashes;
+            } finally {
+                poda.unlock();
+            }
+        }
+
+        // Mantém só as K maiores (pela estimativa atual) e sobe o limiar de entrada para a menor delas
+        private void podar() {
+            Map<String, Long> estimativas = new HashMap<>();
+            for (Map.Entry<String, Long> e : candidatas.entrySet()) {
+                estimativas.put(e.getKey(), sketch.estimar(e.getValue()));
+            }
+            List<String> chaves = new ArrayList<>(estimativas.keySet());
+            chaves.sort((a, b) -> Long.compare(estimativas.get(b), estimativas.get(a)));
+            int manter = Math.min(k, chaves.size());
+            for (int i = manter; i < chaves.size(); i++) {
+                candidatas.remove(chaves.get(i));
+            }
+            if (manter > 0) {
+                limiar = estimativas.get(chaves.get(manter - 1));
+            }
+        }
+    }
+
+    /** Count-Min de 4 linhas x 2048 contadores; índices por hashing duplo. */
+    private static final class CountMin {
+        private static final int PROFUNDIDADE = 4;
+        private static final int LARGURA = 2048;
+
+        private final AtomicLongArray celulas = new AtomicLongArray(PROFUNDIDADE * LARGURA);
+
+        long incrementar(long h) {
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32) | 1;
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < PROFUNDIDADE; i++) {
+                long v = celulas.incrementAndGet(i * LARGURA + ((h1 + i * h2) & (LARGURA - 1)));
+                if (v < min) {
+                    min = v;
+                }
+            }
+            return min;
+        }
+
+        long estimar(long h) {
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32) | 1;
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < PROFUNDIDADE; i++) {
+                long v = celulas.get(i * LARGURA + ((h1 + i * h2) & (LARGURA - 1)));
+                if (v < min) {
+                    min = v;
+                }
+            }
+            return min;
+        }
+    }
+
+    // Handler para /hotkeys (?n=quantas chaves por operação)
+    static class HotKeysHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            int n = k;
+            String param = QueryUtils.parseQuery(exchange.getRequestURI().getRawQuery()).get("n");
+            if (param != null) {
+                try {
+                    n = Integer.parseInt(param);
+                } catch (NumberFormatException e) {
+                    n = -1;
+                }
+            }
+            if (n < 0) {
+                byte[] erro = ("Parâmetro n inválido: " + param).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(400, erro.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(erro);
+                }
+                return;
+            }
+
+            StringBuilder sb = new StringBuilder(1024);
+            sb.append("===== CHAVES QUENTES (últimos 10-20 s) =====\n\n");
+            escreverResumo(sb, n);
+
+            byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+}
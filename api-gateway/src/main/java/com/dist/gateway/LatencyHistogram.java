@@ -0,0 +1,129 @@
+package com.dist.gateway;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latência no estilo HDR (log-linear), sem locks.
+ *
+ * Cada potência de 2 (em microssegundos) é dividida em 32 sub-buckets,
+ * o que dá erro relativo máximo de ~3% nos percentis. Registrar um valor
+ * é só um incremento atômico num array fixo, então dá para deixar ligado
+ * em todos os caminhos quentes.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Maior valor representável: ~2^40 us (~12 dias); acima disso satura
+    private static final int MAX_SHIFT = 40 - SUB_BUCKET_BITS;
+    private static final long MAX_VALUE_US = (1L << 40) - 1;
+
+    private static final double[] QUANTIS = {0.5, 0.9, 0.99, 0.999};
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_SHIFT + 2) * SUB_BUCKETS);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    /** Registra uma duração medida com System.nanoTime(). */
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        long v = Math.min(Math.max(micros, 0), MAX_VALUE_US);
+        counts.incrementAndGet(indexFor(v));
+        totalCount.increment();
+        totalMicros.add(v);
+        maxMicros.accumulate(v);
+    }
+
+    /** Atalho: registra o tempo decorrido desde startNanos. */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    public double getMeanMicros() {
+        long n = totalCount.sum();
+        return n == 0 ? 0 : (double) totalMicros.sum() / n;
+    }
+
+    /** Percentil (0..1) em microssegundos, com a precisão dos sub-buckets. */
+    public long percentileMicros(double quantil) {
+        long total = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        return percentileFromSnapshot(snapshot, total, quantil);
+    }
+
+    /**
+     * Escreve o histograma em formato texto do Prometheus, como "summary"
+     * (quantis calculados a partir dos buckets) em segundos.
+     */
+    public void writePrometheus(StringBuilder sb, String name, String labels) {
+        long total = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        String sep = labels == null || labels.isEmpty() ? "" : labels + ",";
+        for (double q : QUANTIS) {
+            long us = percentileFromSnapshot(snapshot, total, q);
+            sb.append(name).append("{").append(sep).append("quantile=\"").append(q).append("\"} ")
+              .append(us / 1_000_000.0).append('\n');
+        }
+        String suffix = labels == null || labels.isEmpty() ? "" : "{" + labels + "}";
+        sb.append(name).append("_sum").append(suffix).append(' ')
+          .append(totalMicros.sum() / 1_000_000.0).append('\n');
+        sb.append(name).append("_count").append(suffix).append(' ')
+          .append(total).append('\n');
+    }
+
+    private long percentileFromSnapshot(long[] snapshot, long total, double quantil) {
+        if (total == 0) return 0;
+        long alvo = Math.max(1, (long) Math.ceil(quantil * total));
+        long acumulado = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            acumulado += snapshot[i];
+            if (acumulado >= alvo) {
+                // o limite superior do bucket nunca passa do maior valor registrado
+                return Math.min(highestEquivalentValue(i), maxMicros.get());
+            }
+        }
+        return MAX_VALUE_US;
+    }
+
+    static int indexFor(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int shift = msb - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((v >>> shift) - SUB_BUCKETS);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = (index % SUB_BUCKETS) + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
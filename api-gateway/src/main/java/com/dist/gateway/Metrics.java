@@ -0,0 +1,196 @@
+package com.dist.gateway;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas do Gateway, expostas em /metrics no formato texto do Prometheus.
+ *
+ *  - histogramas de latência por caminho (set, get, append por chamada,
+ *    append_fanout para o fan-out completo, scan até o fim do stream, tcp, udp)
+ *  - histograma de replicação por follower
+ *  - contadores de erros, timeouts, eleições, GETs agrupados e GETs
+ *    respondidos pelo Bloom filter
+ *  - gauge de atraso (lag) de cada follower em relação ao último índice do líder
+ *  - conexões por nó (ConnectionManager) e controle de admissão (AdmissionController)
+ */
+public class Metrics {
+
+    public static final String SET = "set";
+    public static final String GET = "get";
+    public static final String APPEND = "append";
+    public static final String APPEND_FAN_OUT = "append_fanout";
+    public static final String SCAN = "scan";
+    public static final String TCP = "tcp";
+    public static final String UDP = "udp";
+
+    private static final String[] CAMINHOS = {SET, GET, APPEND, APPEND_FAN_OUT, SCAN, TCP, UDP};
+
+    private static final Map<String, LatencyHistogram> proxyLatency = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> erros = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> timeouts = new ConcurrentHashMap<>();
+
+    private static final Map<String, LatencyHistogram> replicacaoPorFollower = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicLong> ultimoIndiceFollower = new ConcurrentHashMap<>();
+
+    private static final LongAdder eleicoes = new LongAdder();
+    private static final LongAdder getsAgrupados = new LongAdder();
+    private static final LongAdder bloomNegativos = new LongAdder();
+    private static final AtomicLong ultimoIndiceLider = new AtomicLong(0);
+
+    static {
+        for (String caminho : CAMINHOS) {
+            proxyLatency.put(caminho, new LatencyHistogram());
+            erros.put(caminho, new LongAdder());
+            timeouts.put(caminho, new LongAdder());
+        }
+    }
+
+    public static LatencyHistogram proxy(String caminho) {
+        return proxyLatency.computeIfAbsent(caminho, c -> new LatencyHistogram());
+    }
+
+    /** Conta um erro; se a causa for timeout, conta também no contador de timeouts. */
+    public static void erro(String caminho, Throwable causa) {
+        erros.computeIfAbsent(caminho, c -> new LongAdder()).increment();
+        if (causa instanceof HttpTimeoutException) {
+            timeouts.computeIfAbsent(caminho, c -> new LongAdder()).increment();
+        }
+    }
+
+    public static void erro(String caminho) {
+        erro(caminho, null);
+    }
+
+    public static void eleicao() {
+        eleicoes.increment();
+    }
+
+    /** GET respondido com 404 pelo Bloom filter, sem chamar réplica. */
+    public static void bloomNegativo() {
+        bloomNegativos.increment();
+    }
+
+    /** GET atendido pelo resultado de outro GET igual já em andamento. */
+    public static void getAgrupado() {
+        getsAgrupados.increment();
+    }
+
+    /** Registra o resultado de uma replicação para um follower. */
+    public static void replicacao(String followerId, long index, long startNanos, boolean ok) {
+        replicacaoPorFollower.computeIfAbsent(followerId, id -> new LatencyHistogram())
+                .recordSince(startNanos);
+        ultimoIndiceLider.accumulateAndGet(index, Math::max);
+        if (ok) {
+            ultimoIndiceFollower.computeIfAbsent(followerId, id -> new AtomicLong(0))
+                    .accumulateAndGet(index, Math::max);
+        }
+    }
+
+    /** Índice de log mais alto visto pelo Gateway vindo do líder. */
+    public static long getUltimoIndiceLider() {
+        return ultimoIndiceLider.get();
+    }
+
+    /** Quantas entradas o follower está atrás do último índice replicado pelo líder. */
+    public static long lagDoFollower(String followerId) {
+        AtomicLong idx = ultimoIndiceFollower.get(followerId);
+        long seguidor = idx == null ? 0 : idx.get();
+        return Math.max(0, ultimoIndiceLider.get() - seguidor);
+    }
+
+    public static String render() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        sb.append("# HELP gateway_proxy_latency_seconds Latência das chamadas do Gateway por caminho\n");
+        sb.append("# TYPE gateway_proxy_latency_seconds summary\n");
+        for (Map.Entry<String, LatencyHistogram> e : proxyLatency.entrySet()) {
+            e.getValue().writePrometheus(sb, "gateway_proxy_latency_seconds",
+                    "path=\"" + e.getKey() + "\"");
+        }
+
+        sb.append("# HELP gateway_replication_latency_seconds Latência de replicação por follower\n");
+        sb.append("# TYPE gateway_replication_latency_seconds summary\n");
+        for (Map.Entry<String, LatencyHistogram> e : replicacaoPorFollower.entrySet()) {
+            e.getValue().writePrometheus(sb, "gateway_replication_latency_seconds",
+                    "node=\"" + e.getKey() + "\"");
+        }
+
+        sb.append("# HELP gateway_errors_total Erros por caminho\n");
+        sb.append("# TYPE gateway_errors_total counter\n");
+        for (Map.Entry<String, LongAdder> e : erros.entrySet()) {
+            sb.append("gateway_errors_total{path=\"").append(e.getKey()).append("\"} ")
+              .append(e.getValue().sum()).append('\n');
+        }
+
+        sb.append("# HELP gateway_timeouts_total Timeouts por caminho\n");
+        sb.append("# TYPE gateway_timeouts_total counter\n");
+        for (Map.Entry<String, LongAdder> e : timeouts.entrySet()) {
+            sb.append("gateway_timeouts_total{path=\"").append(e.getKey()).append("\"} ")
+              .append(e.getValue().sum()).append('\n');
+        }
+
+        sb.append("# HELP gateway_elections_total Eleições de líder realizadas\n");
+        sb.append("# TYPE gateway_elections_total counter\n");
+        sb.append("gateway_elections_total ").append(eleicoes.sum()).append('\n');
+
+        sb.append("# HELP gateway_leader_epoch Época do líder atual (a mesma em todos os Gateways)\n");
+        sb.append("# TYPE gateway_leader_epoch gauge\n");
+        sb.append("gateway_leader_epoch ").append(ServiceRegistry.getEpoca()).append('\n');
+
+        sb.append("# HELP gateway_coalesced_gets_total GETs que aproveitaram uma chamada igual em andamento\n");
+        sb.append("# TYPE gateway_coalesced_gets_total counter\n");
+        sb.append("gateway_coalesced_gets_total ").append(getsAgrupados.sum()).append('\n');
+
+        sb.append("# HELP gateway_bloom_ready Bloom filter de chaves já sincronizado com o líder\n");
+        sb.append("# TYPE gateway_bloom_ready gauge\n");
+        sb.append("gateway_bloom_ready ").append(BloomFilter.CHAVES.isPronto() ? 1 : 0).append('\n');
+        sb.append("# HELP gateway_bloom_negative_total GETs respondidos com 404 pelo Bloom filter\n");
+        sb.append("# TYPE gateway_bloom_negative_total counter\n");
+        sb.append("gateway_bloom_negative_total ").append(bloomNegativos.sum()).append('\n');
+
+        sb.append("# HELP gateway_leader_log_index Último índice de log replicado pelo líder\n");
+        sb.append("# TYPE gateway_leader_log_index gauge\n");
+        sb.append("gateway_leader_log_index ").append(ultimoIndiceLider.get()).append('\n');
+
+        sb.append("# HELP gateway_follower_lag_entries Entradas de atraso de cada follower\n");
+        sb.append("# TYPE gateway_follower_lag_entries gauge\n");
+        for (ServiceRegistry.NodeInfo info : ServiceRegistry.getFollowersAtivos()) {
+            sb.append("gateway_follower_lag_entries{node=\"").append(info.id).append("\"} ")
+              .append(lagDoFollower(info.id)).append('\n');
+        }
+
+        ConnectionManager.writePrometheus(sb);
+        AdmissionController.writePrometheus(sb);
+        Faixa.writePrometheus(sb);
+
+        int ativos = ServiceRegistry.getNosAtivosParaGet().size();
+        sb.append("# HELP gateway_active_nodes Nós ativos no registro\n");
+        sb.append("# TYPE gateway_active_nodes gauge\n");
+        sb.append("gateway_active_nodes ").append(ativos).append('\n');
+
+        return sb.toString();
+    }
+
+    // Handler para /metrics
+    static class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            byte[] bytes = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.dist.gateway;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodifica a query string dos endpoints que o próprio Gateway responde,
+ * como o /hotkeys. As de /set, /get e /append seguem para os nós sem
+ * passar por aqui.
+ */
+final class QueryUtils {
+
+    private QueryUtils() {
+    }
+
+    /** Pares "nome=valor" decodificados; pares sem '=' são ignorados. Query nula vira mapa vazio. */
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> map = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return map;
+        }
+        for (String pair : query.split("&")) {
+            if (!pair.contains("=")) continue;
+            String[] kv = pair.split("=", 2);
+            map.put(URLDecoder.decode(kv[0], StandardCharsets.UTF_8),
+                    URLDecoder.decode(kv[1], StandardCharsets.UTF_8));
+        }
+        return map;
+    }
+}
@@ -1,5 +1,10 @@
 package com.dist.gateway;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -12,6 +17,15 @@ import java.util.concurrent.atomic.AtomicInteger;
  *  - mantém apenas 1 líder por vez (currentLeaderId)
  *  - faz eleição automática
  *  - demove líderes antigos para FOLLOWER quando necessário
+ *  - numera cada líder com uma época e a compartilha com os outros
+ *    Gateways pelo Gossip: todos escrevem no mesmo líder
+ *  - grava nós, líder e época num arquivo a cada mudança e os recarrega
+ *    ao subir: reiniciar o Gateway não exige reiniciar as réplicas
+ *  - heartbeat de nó desconhecido que traz o endereço registra o nó
+ *  - sem líder conhecido (Gateway novo, ou reiniciado sem arquivo), mantém
+ *    o nó que se informa líder no heartbeat ou espera um intervalo de
+ *    heartbeat antes de eleger: o primeiro nó a aparecer não vira líder
+ *    só por ter chegado antes
  */
 public class ServiceRegistry {
 
@@ -26,15 +40,39 @@ public class ServiceRegistry {
     // ID do líder atual decidido pelo Gateway
     private static volatile String currentLeaderId = null;
 
-    public static void registerNode(String id, String ip, int port, String roleHint) {
+    // Sobe a cada líder novo; entre Gateways vale a maior
+    private static volatile long epoca = 0;
+
+    // Onde o registro é gravado (null: não grava)
+    private static Path arquivo;
+
+    // Sem líder, espera um heartbeat de cada nó (a cada 2 s, mais folga)
+    // para eleger pelo log de todos
+    private static final long ESPERA_ELEICAO_MS = 2500;
+
+    // Desde quando há nó disponível e nenhum líder (0: não está esperando)
+    private static long semLiderDesde = 0;
+
+    // Depois de carregar o arquivo, o líder salvo tem até este instante para
+    // mandar heartbeat antes de outro ser eleito no lugar dele
+    private static long esperaLiderSalvoAte = 0;
+
+    public static synchronized void registerNode(String id, String ip, int port, String roleHint) {
         NodeInfo info = new NodeInfo(id, ip, port, roleHint);
-        registry.put(id, info);
+        NodeInfo anterior = registry.put(id, info);
+        if (anterior != null) {
+            info.carga = anterior.carga;
+        }
 
         // Decisão do papel real é do Gateway
-        if (currentLeaderId == null) {
-            currentLeaderId = id;
+        if (id.equals(currentLeaderId)) {
             info.role = "LEADER";
-            System.out.println("[Gateway] Nó " + id + " definido como LÍDER atual.");
+            System.out.println("[Gateway] Nó " + id + " voltou a se registrar e segue como LÍDER.");
+        } else if (currentLeaderId == null) {
+            info.role = "FOLLOWER";
+            aguardandoHeartbeats();
+            System.out.println("[Gateway] Nó " + id + " registrado sem líder definido; "
+                    + "a eleição espera o heartbeat dos outros nós.");
         } else {
             info.role = "FOLLOWER";
             System.out.println("[Gateway] Nó " + id + " registrado como FOLLOWER. Líder atual: " + currentLeaderId);
@@ -43,17 +81,229 @@ public class ServiceRegistry {
         System.out.println("[Gateway] Registro recebido: nó " + id +
                 " (" + ip + ":" + port + "), papel recebido=" + roleHint +
                 ", papel efetivo=" + info.role);
+        if (anterior == null || !anterior.ip.equals(ip) || anterior.port != port) {
+            salvar();
+        }
     }
 
     public static void updateHeartbeat(String id) {
+        updateHeartbeat(id, null);
+    }
+
+    /** Heartbeat binário: além de marcar vivo, guarda a carga informada pelo nó. */
+    public static void updateHeartbeat(String id, Carga carga) {
+        updateHeartbeat(id, carga, null, 0);
+    }
+
+    /**
+     * Heartbeat que traz o endereço do nó: se o nó é desconhecido (Gateway
+     * reiniciado sem arquivo, ou que nunca recebeu o REGISTER), registra.
+     */
+    public static void updateHeartbeat(String id, Carga carga, String ip, int port) {
         NodeInfo info = registry.get(id);
+        if (info == null && ip != null) {
+            System.out.println("[Gateway] Heartbeat de nó desconhecido: " + id + "; registrando pelo heartbeat");
+            registerNode(id, ip, port, "FOLLOWER");
+            info = registry.get(id);
+        }
         if (info == null) {
             System.out.println("[Gateway] Heartbeat de nó desconhecido: " + id);
             return;
         }
 
         info.lastHeartbeatMillis = System.currentTimeMillis();
-        // Aqui não mexemos em papel, só marcamos vivo (o monitor cuida do resto)
+        if (!info.ativo) {
+            // não espera o monitor: o líder carregado do arquivo volta a receber escritas já
+            info.ativo = true;
+            System.out.println("[Gateway] Nó " + id + " voltou a ficar ATIVO");
+        }
+        if (carga != null) {
+            info.carga = carga;
+            if (carga.lider) {
+                liderInformado(info, carga.epoca);
+            }
+        }
+        // Fora isso não mexemos em papel, só marcamos vivo (o monitor cuida do resto)
+    }
+
+    /**
+     * Nó que se diz líder na época informada: fica sendo o líder, sem
+     * eleição e na época dele, se não temos líder e a época não é mais
+     * velha que a nossa, ou se ela é mais nova que a nossa.
+     */
+    private static synchronized void liderInformado(NodeInfo info, long epocaDoNo) {
+        if (info.id.equals(currentLeaderId) || epocaDoNo < epoca
+                || (currentLeaderId != null && epocaDoNo == epoca)) {
+            return;
+        }
+        currentLeaderId = info.id;
+        epoca = epocaDoNo;
+        semLiderDesde = 0;
+        for (NodeInfo n : registry.values()) {
+            n.role = n.id.equals(info.id) ? "LEADER" : "FOLLOWER";
+        }
+        System.out.println("[Gateway] Época " + epoca + ": líder " + info.id + " mantido (informado pelo nó)");
+        salvar();
+        Gossip.anunciar();
+    }
+
+    /** Id do líder atual, sem forçar eleição (para o /status). */
+    public static String getLiderAtualId() {
+        return currentLeaderId;
+    }
+
+    public static long getEpoca() {
+        return epoca;
+    }
+
+    /**
+     * Época em que 'id' é o líder, lida junto com o líder (sob o mesmo lock
+     * da eleição), ou -1 se ele já não é o líder.
+     */
+    public static synchronized long getEpocaDoLider(String id) {
+        return id.equals(currentLeaderId) ? epoca : -1;
+    }
+
+    // Sempre com o lock da classe. A época nova vai para o arquivo antes de
+    // ser anunciada, para um Gateway reiniciado nunca voltar a uma época já usada;
+    // sem arquivo, passa também da maior época que os nós informaram.
+    private static void definirLider(String id) {
+        currentLeaderId = id;
+        for (NodeInfo n : registry.values()) {
+            Carga c = n.carga;
+            if (c != null && c.epoca > epoca) {
+                epoca = c.epoca;
+            }
+        }
+        epoca++;
+        semLiderDesde = 0;
+        System.out.println("[Gateway] Época " + epoca + ": líder " + id);
+        salvar();
+        Gossip.anunciar();
+    }
+
+    /**
+     * Lê o registro gravado por uma execução anterior, se existir, e passa a
+     * gravar nele. Os nós voltam inativos: só recebem tráfego quando chega o
+     * heartbeat deles, e um líder que morreu junto com o Gateway não recebe
+     * escritas. O líder salvo tem um intervalo de heartbeat para aparecer
+     * antes de haver eleição.
+     *
+     * Formato, uma informação por linha:
+     *   epoca=3
+     *   lider=A1
+     *   no=A1;localhost;5000
+     */
+    static synchronized void carregar(Path caminho) {
+        arquivo = caminho;
+        if (!Files.exists(caminho)) {
+            System.out.println("[Gateway] Sem registro salvo em " + caminho + "; começando vazio");
+            return;
+        }
+        try {
+            String lider = null;
+            for (String linha : Files.readAllLines(caminho, StandardCharsets.UTF_8)) {
+                if (linha.startsWith("epoca=")) {
+                    epoca = Long.parseLong(linha.substring("epoca=".length()));
+                } else if (linha.startsWith("lider=")) {
+                    lider = linha.substring("lider=".length());
+                } else if (linha.startsWith("no=")) {
+                    String[] p = linha.substring("no=".length()).split(";");
+                    NodeInfo info = new NodeInfo(p[0], p[1], Integer.parseInt(p[2]), "FOLLOWER");
+                    info.ativo = false;
+                    info.lastHeartbeatMillis = 0;
+                    registry.put(p[0], info);
+                }
+            }
+            if (lider != null && registry.containsKey(lider)) {
+                currentLeaderId = lider;
+                registry.get(lider).role = "LEADER";
+                esperaLiderSalvoAte = System.currentTimeMillis() + ESPERA_ELEICAO_MS;
+            }
+            System.out.println("[Gateway] Registro carregado de " + caminho + ": " + registry.size() +
+                    " nós, líder " + currentLeaderId + ", época " + epoca);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[Gateway] Registro salvo ilegível (" + e.getMessage() + "); começando vazio");
+            registry.clear();
+            currentLeaderId = null;
+        }
+    }
+
+    // Grava num arquivo temporário e troca de uma vez: quem lê nunca vê um arquivo pela metade
+    private static void salvar() {
+        if (arquivo == null) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("epoca=").append(epoca).append('\n');
+        if (currentLeaderId != null) {
+            sb.append("lider=").append(currentLeaderId).append('\n');
+        }
+        for (NodeInfo n : registry.values()) {
+            sb.append("no=").append(n.id).append(';').append(n.ip).append(';').append(n.port).append('\n');
+        }
+        try {
+            Path tmp = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+            Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("[Gateway] Erro ao gravar o registro em " + arquivo + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Visão recebida de outro Gateway: registra os nós que ainda não
+     * conhecemos e adota o líder dele se a época for maior.
+     *
+     * Mesma época com outro líder: os dois Gateways elegeram ao mesmo tempo.
+     * As réplicas recusam o segundo líder dessa época, então nenhum dos dois
+     * pode ficar nela; cada lado passa para uma época nova com o líder de
+     * menor id, e os dois chegam ao mesmo par (época, líder).
+     */
+    static synchronized void aplicarGossip(String origem, long epocaRemota, String liderRemoto,
+                                           List<String[]> membros) {
+        boolean mudou = false;
+        for (String[] m : membros) {
+            if (!registry.containsKey(m[0])) {
+                NodeInfo info = new NodeInfo(m[0], m[1], Integer.parseInt(m[2]), "FOLLOWER");
+                registry.put(m[0], info);
+                mudou = true;
+                System.out.println("[Gateway] Nó " + m[0] + " (" + info.baseUrl() + ") conhecido pelo gossip de " + origem);
+            }
+        }
+
+        if (liderRemoto == null || !registry.containsKey(liderRemoto)) {
+            if (mudou) {
+                salvar();
+            }
+            return;
+        }
+        if (epocaRemota == epoca && currentLeaderId != null && !liderRemoto.equals(currentLeaderId)) {
+            String vencedor = liderRemoto.compareTo(currentLeaderId) < 0 ? liderRemoto : currentLeaderId;
+            System.out.println("[Gateway] Época " + epoca + " com dois líderes (" + currentLeaderId + " aqui, "
+                    + liderRemoto + " em " + origem + "); seguindo com " + vencedor + " numa época nova");
+            for (NodeInfo n : registry.values()) {
+                n.role = n.id.equals(vencedor) ? "LEADER" : "FOLLOWER";
+            }
+            definirLider(vencedor); // já grava e anuncia
+            return;
+        }
+        boolean adotar = epocaRemota > epoca || (epocaRemota == epoca && currentLeaderId == null);
+        if (adotar) {
+            epoca = epocaRemota;
+            currentLeaderId = liderRemoto;
+            semLiderDesde = 0;
+            for (NodeInfo n : registry.values()) {
+                n.role = n.id.equals(liderRemoto) ? "LEADER" : "FOLLOWER";
+            }
+            System.out.println("[Gateway] Época " + epoca + ": líder " + liderRemoto + " adotado do gossip de " + origem);
+            mudou = true;
+        } else if (epocaRemota < epoca) {
+            Gossip.anunciar(); // o outro está atrasado: responde já, sem esperar o próximo ciclo
+        }
+        if (mudou) {
+            salvar();
+        }
     }
 
     /** Chamada pelo monitor: atualiza ativo/inativo e garante que haja 1 líder ativo. */
@@ -66,22 +316,47 @@ public class ServiceRegistry {
 
     /** Garante que existe um líder ativo; se não tiver, elege um follower. */
     private static synchronized void garantirLeaderAtivo() {
-        // Se temos um líder atual, e ele existe e está ativo, beleza
+        // Se temos um líder atual, e ele existe e está disponível, beleza
         if (currentLeaderId != null) {
             NodeInfo leader = registry.get(currentLeaderId);
-            if (leader != null && leader.ativo) {
+            if (leader != null && disponivel(leader)) {
                 leader.role = "LEADER";
                 return;
             }
         }
 
+        // Sem líder nenhum, elege só depois de ouvir todos os nós
+        if (currentLeaderId == null && aguardandoHeartbeats()) {
+            return;
+        }
+        // Líder carregado do arquivo ainda sem heartbeat: espera ele aparecer
+        if (System.currentTimeMillis() < esperaLiderSalvoAte) {
+            return;
+        }
+
         // Se chegou aqui, não há líder ativo → tentar eleger
         NodeInfo novo = promoverFollowerParaLeader();
         if (novo == null) {
             currentLeaderId = null;
         } else {
-            currentLeaderId = novo.id;
+            definirLider(novo.id);
+        }
+    }
+
+    // Sempre com o lock da classe. Conta o tempo sem líder a partir do
+    // primeiro nó disponível; true enquanto não passou ESPERA_ELEICAO_MS.
+    private static boolean aguardandoHeartbeats() {
+        if (getNosAtivosParaGet().isEmpty()) {
+            semLiderDesde = 0;
+            return true;
+        }
+        long agora = System.currentTimeMillis();
+        if (semLiderDesde == 0) {
+            semLiderDesde = agora;
+            System.out.println("[Gateway] Sem líder: eleição em " + ESPERA_ELEICAO_MS
+                    + " ms, depois dos heartbeats dos nós");
         }
+        return agora - semLiderDesde < ESPERA_ELEICAO_MS;
     }
 
     /** Usa para /set – sempre devolve o líder ativo, elegendo se necessário. */
@@ -89,10 +364,27 @@ public class ServiceRegistry {
         garantirLeaderAtivo();
         if (currentLeaderId == null) return null;
         NodeInfo leader = registry.get(currentLeaderId);
-        if (leader != null && leader.ativo) return leader;
+        if (leader != null && disponivel(leader)) return leader;
         return null;
     }
 
+    /**
+     * Chamado pelo ConnectionManager quando o circuito de um nó abre.
+     * O nó sai do round-robin de GET até o circuito permitir um teste;
+     * se era o líder, já elege outro sem esperar o timeout de heartbeat.
+     */
+    public static void notificarCircuitoAberto(NodeInfo info) {
+        System.out.println("[Gateway] Nó " + info.id + " indisponível (circuito aberto)");
+        if (info.id.equals(currentLeaderId)) {
+            garantirLeaderAtivo();
+        }
+    }
+
+    // Ativo pelo heartbeat e aceitando tráfego pelo circuit breaker
+    private static boolean disponivel(NodeInfo info) {
+        return info.ativo && ConnectionManager.aceitaTrafego(info);
+    }
+
     /** Followers ativos (para replicação mínima do SET). */
     public static List<NodeInfo> getFollowersAtivos() {
         List<NodeInfo> followers = new ArrayList<>();
@@ -104,11 +396,11 @@ public class ServiceRegistry {
         return followers;
     }
 
-    /** Lista de nós ativos para GET (líder + followers). */
+    /** Lista de nós disponíveis para GET (líder + followers). */
     public static List<NodeInfo> getNosAtivosParaGet() {
         List<NodeInfo> ativos = new ArrayList<>();
         for (NodeInfo info : registry.values()) {
-            if (info.ativo) {
+            if (disponivel(info)) {
                 ativos.add(info);
             }
         }
@@ -133,8 +425,16 @@ public class ServiceRegistry {
             return null;
         }
 
-        // Estratégia simples: pega o primeiro nós ativos (poderia ordenar por id)
+        // O mais adiantado no log (pelo último heartbeat) e, no empate, o menor id:
+        // assim Gateways que elegem ao mesmo tempo tendem a escolher o mesmo nó
         NodeInfo novoLeader = ativos.get(0);
+        for (NodeInfo n : ativos) {
+            long aplicado = n.carga == null ? -1 : n.carga.aplicado;
+            long melhor = novoLeader.carga == null ? -1 : novoLeader.carga.aplicado;
+            if (aplicado > melhor || (aplicado == melhor && n.id.compareTo(novoLeader.id) < 0)) {
+                novoLeader = n;
+            }
+        }
 
         // Ajusta papéis
         for (NodeInfo n : registry.values()) {
@@ -145,6 +445,7 @@ public class ServiceRegistry {
             }
         }
 
+        Metrics.eleicao();
         System.out.println("[Gateway] Eleição concluída! Novo líder eleito: " + novoLeader.id +
                 " (" + novoLeader.baseUrl() + ")");
         return novoLeader;
@@ -182,6 +483,7 @@ public class ServiceRegistry {
 
         public volatile long lastHeartbeatMillis;
         public volatile boolean ativo;
+        public volatile Carga carga; // null até o primeiro heartbeat binário
 
         public NodeInfo(String id, String ip, int port, String roleHint) {
             this.id = id;
@@ -196,4 +498,28 @@ public class ServiceRegistry {
             return "http://" + ip + ":" + port;
         }
     }
+
+    /** O que o nó mandou no último heartbeat binário. */
+    public static final class Carga {
+        public final long ultimoIndice;
+        public final long aplicado;
+        public final int fila;
+        public final int p99Micros;
+        public final long heapUsado;
+        public final long heapMax;
+        public final boolean lider; // o nó se diz líder na época abaixo
+        public final long epoca;    // maior época que o nó viu (-1: nenhuma, ou heartbeat antigo)
+
+        public Carga(long ultimoIndice, long aplicado, int fila, int p99Micros, long heapUsado, long heapMax,
+                     boolean lider, long epoca) {
+            this.ultimoIndice = ultimoIndice;
+            this.aplicado = aplicado;
+            this.fila = fila;
+            this.p99Micros = p99Micros;
+            this.heapUsado = heapUsado;
+            this.heapMax = heapMax;
+            this.lider = lider;
+            this.epoca = epoca;
+        }
+    }
 }
@@ -1,22 +1,48 @@
 package com.dist.gateway;
 
 import java.io.*;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.URI;
-import java.net.http.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
 
 /**
  * Servidor TCP simples para o JMeter.
- * Interpreta comandos SET key value
+ * Interpreta comandos SET key value [ttl]
  *                               GET key
- *                               STATUS
+ *                               CAS key esperado novo
+ *                               INCR key [delta]
+ *                               APPEND key value
+ *                               SCAN [prefixo] [prefix=|start=|end=|limit=|cursor=]
+ *                               STATUS             (JSON numa linha, como o /status)
+ *                               QUIT
+ *
+ * Um comando por linha. As linhas são lidas para um ByteBuffer por conexão
+ * e interpretadas direto nos bytes pelo CommandCodec.
+ *
+ * O SCAN é a única resposta com várias linhas: "chave=valor" (codificados)
+ * repassados conforme chegam da réplica, terminando em "# fim" ou, se o
+ * limite cortou antes, em "# cursor=<última chave>".
+ *
+ * O número de conexões simultâneas é limitado (uma thread por conexão);
+ * acima do limite a conexão recebe "ERRO: busy" e é fechada.
  */
 public class TCPServer implements Runnable {
 
+    private static final int BUFFER_INICIAL = 8 * 1024;
+    private static final int LINHA_MAXIMA = 1024 * 1024;
+
+    private static final byte[] FIM_DE_LINHA = {'\n'};
+    private static final byte[] OCUPADO = "ERRO: busy\n".getBytes(StandardCharsets.UTF_8);
+
+    // Configurável pela linha de comando do Gateway
+    static volatile int maxConexoes = 1024;
+
+    private static final int SCAN_LIMITE_PADRAO = 1000;
+
     private final int port;
-    private final HttpClient httpClient = HttpClient.newHttpClient();
 
     public TCPServer(int port) {
         this.port = port;
@@ -26,10 +52,21 @@ public class TCPServer implements Runnable {
     public void run() {
         try (ServerSocket server = new ServerSocket(port)) {
             System.out.println("[Gateway] Servidor TCP iniciado na porta " + port);
+            Semaphore conexoes = new Semaphore(maxConexoes);
 
             while (true) {
                 Socket socket = server.accept();
-                new Thread(() -> handle(socket)).start();
+                if (!conexoes.tryAcquire()) {
+                    recusar(socket);
+                    continue;
+                }
+                new Thread(() -> {
+                    try {
+                        handle(socket);
+                    } finally {
+                        conexoes.release();
+                    }
+                }).start();
             }
 
         } catch (Exception e) {
@@ -37,29 +74,67 @@ public class TCPServer implements Runnable {
         }
     }
 
+    private static void recusar(Socket socket) {
+        try (Socket s = socket) {
+            s.getOutputStream().write(OCUPADO);
+        } catch (IOException e) {
+            // cliente já foi embora
+        }
+    }
+
 private void handle(Socket socket) {
     try (
-            BufferedReader reader =
-                    new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
-            BufferedWriter writer =
-                    new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))
+            Socket s = socket;
+            InputStream in = s.getInputStream();
+            OutputStream out = new BufferedOutputStream(s.getOutputStream())
     ) {
-        String line;
-        while ((line = reader.readLine()) != null) {
-            if (line.trim().isEmpty()) {
-                continue; // ignora linhas em branco
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_INICIAL);
+        Comando cmd = new Comando();
+        InetAddress cliente = s.getInetAddress();
+
+        while (true) {
+            int n = in.read(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+            if (n < 0) {
+                // última linha sem '\n' também é atendida
+                if (buf.position() > 0) {
+                    atenderLinha(buf, 0, buf.position(), cmd, cliente, out);
+                    out.flush();
+                }
+                break;
             }
-
-            // Se quiser um comando de saída:
-            if (line.trim().equalsIgnoreCase("QUIT")) {
-                writer.write("Encerrando conexão.\n");
-                writer.flush();
+            buf.position(buf.position() + n);
+
+            int inicio = 0;
+            int fim = buf.position();
+            boolean sair = false;
+            for (int i = fim - n; i < fim; i++) {
+                if (buf.get(i) == '\n') {
+                    if (!atenderLinha(buf, inicio, i, cmd, cliente, out)) {
+                        sair = true;
+                        break;
+                    }
+                    inicio = i + 1;
+                }
+            }
+            out.flush();
+            if (sair) {
                 break;
             }
 
-            String resposta = processarComando(line);
-            writer.write(resposta + "\n");
-            writer.flush();
+            // descarta as linhas já atendidas e mantém o pedaço incompleto
+            buf.flip().position(inicio);
+            buf.compact();
+            if (!buf.hasRemaining()) {
+                if (buf.capacity() >= LINHA_MAXIMA) {
+                    out.write("ERRO: linha muito longa\n".getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    break;
+                }
+                ByteBuffer maior = ByteBuffer.allocate(buf.capacity() * 2);
+                buf.flip();
+                maior.put(buf);
+                buf = maior;
+            }
         }
 
     } catch (Exception e) {
@@ -67,88 +142,69 @@ private void handle(Socket socket) {
     }
 }
 
+    /** Atende uma linha; devolve false se o cliente pediu para encerrar. */
+    private boolean atenderLinha(ByteBuffer buf, int inicio, int fim, Comando cmd,
+                                 InetAddress cliente, OutputStream out) throws IOException {
+        CommandCodec.parse(buf, inicio, fim, cmd);
+        if (cmd.getTipo() == Comando.Tipo.VAZIO) {
+            return true; // ignora linhas em branco
+        }
+        if (cmd.getTipo() == Comando.Tipo.QUIT) {
+            out.write("Encerrando conexão.\n".getBytes(StandardCharsets.UTF_8));
+            return false;
+        }
 
-    private String processarComando(String cmd) {
-        try {
-            String[] parts = cmd.trim().split("\\s+");
-
-            if (parts.length == 0) return "ERRO: comando vazio";
-
-            switch (parts[0].toUpperCase()) {
-
-                case "SET":
-                    if (parts.length < 3)
-                        return "ERRO: use SET chave valor";
-                    return processarSet(parts[1], parts[2]);
-
-                case "GET":
-                    if (parts.length < 2)
-                        return "ERRO: use GET chave";
-                    return processarGet(parts[1]);
-
-                case "STATUS":
-                    return gerarStatus();
-
-                default:
-                    return "ERRO: comando desconhecido";
-            }
-        } catch (Exception e) {
-            return "ERRO ao processar comando: " + e.getMessage();
+        if (!AdmissionController.permitirCliente(cliente)) {
+            out.write(OCUPADO);
+            return true;
         }
-    }
 
-    private String processarSet(String key, String value) {
-        ServiceRegistry.NodeInfo leader = ServiceRegistry.getLeaderAtivo();
-        if (leader == null) return "ERRO: nenhum líder ativo";
+        if (cmd.getTipo() == Comando.Tipo.SCAN) {
+            scan(cmd, out);
+            return true;
+        }
 
-        String url = leader.baseUrl() + "/set?key=" + key + "&value=" + value;
+        String resposta = processarComando(cmd);
+        out.write(resposta.getBytes(StandardCharsets.UTF_8));
+        out.write(FIM_DE_LINHA);
+        return true;
+    }
 
+    // Repassa o stream da réplica direto para o socket, sem montar a resposta
+    private void scan(Comando cmd, OutputStream out) throws IOException {
+        long inicio = System.nanoTime();
         try {
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> resp =
-                    httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-
-            return resp.body();
-        } catch (Exception e) {
-            return "ERRO SET: " + e.getMessage();
+            CommandDispatcher.Resposta r = CommandDispatcher.scan(
+                    CommandDispatcher.queryDoScan(cmd, SCAN_LIMITE_PADRAO), (status, corpo) -> {
+                        if (status == 200) {
+                            corpo.transferTo(out);
+                        } else {
+                            String erro = new String(corpo.readAllBytes(), StandardCharsets.UTF_8).trim();
+                            out.write(("ERRO SCAN: " + erro + "\n").getBytes(StandardCharsets.UTF_8));
+                        }
+                    });
+            String erro = null;
+            if (r.falha == CommandDispatcher.Resposta.Falha.SEM_NO) erro = "ERRO: nenhum nó ativo";
+            else if (r.falha == CommandDispatcher.Resposta.Falha.OCUPADO) erro = r.body;
+            else if (!r.ok()) erro = "ERRO SCAN: " + r.body;
+            if (erro != null) {
+                out.write(erro.getBytes(StandardCharsets.UTF_8));
+                out.write(FIM_DE_LINHA);
+            }
+        } finally {
+            Metrics.proxy(Metrics.TCP).recordSince(inicio);
         }
     }
 
-    private String processarGet(String key) {
-        ServiceRegistry.NodeInfo node = ServiceRegistry.getNodeParaGet();
-        if (node == null) return "ERRO: nenhum nó ativo";
-
-        String url = node.baseUrl() + "/get?key=" + key;
-
+    String processarComando(Comando cmd) {
+        long inicio = System.nanoTime();
         try {
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> resp =
-                    httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-
-            return resp.body();
+            return CommandDispatcher.executar(cmd);
         } catch (Exception e) {
-            return "ERRO GET: " + e.getMessage();
-        }
-    }
-
-    private String gerarStatus() {
-        StringBuilder sb = new StringBuilder();
-        for (ServiceRegistry.NodeInfo info : ServiceRegistry.getTodosOsNos()) {
-            sb.append(info.id)
-              .append(" | ")
-              .append(info.role)
-              .append(" | ativo=")
-              .append(info.ativo)
-              .append("\n");
+            Metrics.erro(Metrics.TCP, e);
+            return "ERRO ao processar comando: " + e.getMessage();
+        } finally {
+            Metrics.proxy(Metrics.TCP).recordSince(inicio);
         }
-        return sb.toString();
     }
 }
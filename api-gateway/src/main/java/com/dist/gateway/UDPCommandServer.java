@@ -2,54 +2,92 @@ package com.dist.gateway;
 
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Servidor UDP para clientes (JMeter).
  *
  * Comandos aceitos no payload:
- *   SET chave valor
+ *   SET chave valor [ttl]
  *   GET chave
- *   STATUS
+ *   CAS chave esperado novo
+ *   INCR chave [delta]
+ *   APPEND chave valor
+ *   SCAN [prefixo] [prefix=|start=|end=|limit=|cursor=]
+ *   STATUS                   (JSON numa linha, como o /status)
  *
- * Resposta é enviada no próprio UDP de volta.
+ * Resposta é enviada no próprio UDP de volta. O SCAN devolve uma única
+ * página (100 chaves por padrão, cortada para caber no datagrama) e, se
+ * houver mais, termina em "# cursor=..." para o cliente continuar dali. O payload é interpretado
+ * direto no buffer do datagrama pelo CommandCodec.
+ *
+ * A thread de recepção copia cada datagrama para um "slot" livre e o
+ * entrega a um pool fixo de trabalhadores. Os slots são pré-alocados e
+ * limitam quantos datagramas podem esperar; sem slot livre a resposta
+ * "ERRO: busy" sai na hora, da própria thread de recepção.
  */
 public class UDPCommandServer implements Runnable {
 
+    private static final int TAMANHO_DATAGRAMA = 1024;
+    private static final byte[] OCUPADO = "ERRO: busy".getBytes(StandardCharsets.UTF_8);
+
+    // Configuráveis pela linha de comando do Gateway
+    static volatile int trabalhadores = 64;
+    static volatile int fila = 256;
+
     private final int port;
-    private final HttpClient httpClient = HttpClient.newHttpClient();
 
     public UDPCommandServer(int port) {
         this.port = port;
     }
 
+    // Um datagrama recebido e o Comando onde ele é interpretado
+    private static final class Slot {
+        final byte[] buffer = new byte[TAMANHO_DATAGRAMA];
+        final ByteBuffer bytes = ByteBuffer.wrap(buffer);
+        final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        final Comando cmd = new Comando();
+    }
+
     @Override
     public void run() {
         try (DatagramSocket socket = new DatagramSocket(port)) {
             System.out.println("[Gateway] Servidor UDP de comandos iniciado na porta " + port);
 
-            byte[] buffer = new byte[1024];
-
-            while (true) {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet);
-
-                String msg = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8).trim();
+            BlockingQueue<Slot> livres = new ArrayBlockingQueue<>(fila);
+            BlockingQueue<Slot> prontos = new ArrayBlockingQueue<>(fila);
+            for (int i = 0; i < fila; i++) {
+                livres.add(new Slot());
+            }
+            for (int i = 0; i < trabalhadores; i++) {
+                Thread t = new Thread(() -> trabalhar(socket, livres, prontos), "udp-cmd-" + i);
+                t.setDaemon(true);
+                t.start();
+            }
 
-                String resposta = processarComando(msg);
+            Slot slot = livres.take();
+            DatagramPacket recusa = new DatagramPacket(OCUPADO, OCUPADO.length);
 
-                byte[] out = resposta.getBytes(StandardCharsets.UTF_8);
-                DatagramPacket resp = new DatagramPacket(
-                        out, out.length,
-                        packet.getAddress(),
-                        packet.getPort()
-                );
-                socket.send(resp);
+            while (true) {
+                slot.packet.setLength(slot.buffer.length);
+                socket.receive(slot.packet);
+
+                if (!AdmissionController.permitirCliente(slot.packet.getAddress())) {
+                    responderOcupado(socket, recusa, slot.packet);
+                    continue;
+                }
+
+                Slot proximo = livres.poll();
+                if (proximo == null) {
+                    // todos os slots esperando: descarta em vez de enfileirar mais
+                    responderOcupado(socket, recusa, slot.packet);
+                    continue;
+                }
+                prontos.add(slot);
+                slot = proximo;
             }
 
         } catch (Exception e) {
@@ -57,83 +95,51 @@ public class UDPCommandServer implements Runnable {
         }
     }
 
-    private String processarComando(String cmd) {
+    private static void responderOcupado(DatagramSocket socket, DatagramPacket recusa, DatagramPacket origem) {
+        recusa.setSocketAddress(origem.getSocketAddress());
         try {
-            String[] parts = cmd.trim().split("\\s+");
-            if (parts.length == 0) return "ERRO: comando vazio";
-
-            switch (parts[0].toUpperCase()) {
-                case "SET":
-                    if (parts.length < 3) return "ERRO: use SET chave valor";
-                    return processarSet(parts[1], parts[2]);
-
-                case "GET":
-                    if (parts.length < 2) return "ERRO: use GET chave";
-                    return processarGet(parts[1]);
-
-                case "STATUS":
-                    return gerarStatus();
-
-                default:
-                    return "ERRO: comando desconhecido";
-            }
+            socket.send(recusa);
         } catch (Exception e) {
-            return "ERRO ao processar comando: " + e.getMessage();
+            System.out.println("[Gateway] Erro ao responder UDP: " + e.getMessage());
         }
     }
 
-    private String processarSet(String key, String value) {
-        ServiceRegistry.NodeInfo leader = ServiceRegistry.getLeaderAtivo();
-        if (leader == null) return "ERRO: nenhum líder ativo";
-
-        String url = leader.baseUrl() + "/set?key=" + key + "&value=" + value;
-
-        try {
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> resp =
-                    httpClient.send(req, HttpResponse.BodyHandlers.ofString());
+    private void trabalhar(DatagramSocket socket, BlockingQueue<Slot> livres, BlockingQueue<Slot> prontos) {
+        while (true) {
+            Slot slot;
+            try {
+                slot = prontos.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                CommandCodec.parse(slot.bytes, 0, slot.packet.getLength(), slot.cmd);
+                String resposta = processarComando(slot.cmd);
 
-            return resp.body();
-        } catch (Exception e) {
-            return "ERRO SET: " + e.getMessage();
+                byte[] out = resposta.getBytes(StandardCharsets.UTF_8);
+                DatagramPacket resp = new DatagramPacket(
+                        out, out.length,
+                        slot.packet.getAddress(),
+                        slot.packet.getPort()
+                );
+                socket.send(resp);
+            } catch (Exception e) {
+                System.out.println("[Gateway] Erro ao responder UDP: " + e.getMessage());
+            } finally {
+                livres.add(slot);
+            }
         }
     }
 
-    private String processarGet(String key) {
-        ServiceRegistry.NodeInfo node = ServiceRegistry.getNodeParaGet();
-        if (node == null) return "ERRO: nenhum nó ativo";
-
-        String url = node.baseUrl() + "/get?key=" + key;
-
+    String processarComando(Comando cmd) {
+        long inicio = System.nanoTime();
         try {
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> resp =
-                    httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-
-            return resp.body();
+            return CommandDispatcher.executar(cmd);
         } catch (Exception e) {
-            return "ERRO GET: " + e.getMessage();
-        }
-    }
-
-    private String gerarStatus() {
-        StringBuilder sb = new StringBuilder();
-        for (ServiceRegistry.NodeInfo info : ServiceRegistry.getTodosOsNos()) {
-            sb.append(info.id)
-              .append(" | ")
-              .append(info.role)
-              .append(" | ativo=")
-              .append(info.ativo)
-              .append("\n");
+            Metrics.erro(Metrics.UDP, e);
+            return "ERRO ao processar comando: " + e.getMessage();
+        } finally {
+            Metrics.proxy(Metrics.UDP).recordSince(inicio);
         }
-        return sb.toString();
     }
 }
@@ -2,15 +2,27 @@ package com.dist.gateway;
 
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
  * Servidor UDP que escuta:
  *  - REGISTER;id;ip;port;role
  *  - HEARTBEAT;id
+ *  - GOSSIP;... de outros Gateways (ver Gossip)
+ *  - heartbeat binário (primeiro byte 0x01): id, último índice do log,
+ *    lastAppliedIndex, fila, p99 recente e heap; lido direto do buffer,
+ *    sem montar String (o formato está no Heartbeat da réplica). A versão 2
+ *    traz também host e porta HTTP do nó, e um nó desconhecido é registrado
+ *    pelo próprio heartbeat. A versão 3 traz o papel que o nó diz ter e a
+ *    maior época que ele viu
  */
 public class UDPRegisterServer implements Runnable {
 
+    private static final byte HEARTBEAT_BINARIO = 0x01;
+    private static final byte VERSAO_HEARTBEAT = 3; // 1 (sem endereço) e 2 (sem papel) também são aceitas
+
     private final int port;
 
     public UDPRegisterServer(int port) {
@@ -23,14 +35,24 @@ public class UDPRegisterServer implements Runnable {
             System.out.println("[Gateway] Servidor UDP iniciado na porta " + port +
                     " (REGISTER + HEARTBEAT)");
 
-            byte[] buffer = new byte[1024];
+            byte[] buffer = new byte[65507]; // o GOSSIP lista todos os nós
 
             while (true) {
                 DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
                 socket.receive(packet);
 
-                String msg = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
-                process(msg);
+                // Um datagrama malformado não pode derrubar o servidor: sem ele
+                // nenhum heartbeat chega e todos os nós caem pelo timeout
+                try {
+                    if (packet.getLength() > 0 && buffer[0] == HEARTBEAT_BINARIO) {
+                        processHeartbeatBinario(ByteBuffer.wrap(buffer, 0, packet.getLength()));
+                        continue;
+                    }
+                    String msg = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+                    process(msg);
+                } catch (RuntimeException e) {
+                    System.out.println("[Gateway] Mensagem UDP ignorada (" + e + ") de " + packet.getSocketAddress());
+                }
             }
         } catch (Exception e) {
             System.out.println("[Gateway] Erro no servidor UDP: " + e.getMessage());
@@ -42,6 +64,8 @@ public class UDPRegisterServer implements Runnable {
             processRegister(msg);
         } else if (msg.startsWith("HEARTBEAT;")) {
             processHeartbeat(msg);
+        } else if (msg.startsWith("GOSSIP;")) {
+            Gossip.receber(msg);
         } else {
             System.out.println("[Gateway] Mensagem UDP desconhecida: " + msg);
         }
@@ -62,6 +86,51 @@ public class UDPRegisterServer implements Runnable {
         ServiceRegistry.registerNode(id, ip, port, role);
     }
 
+    private void processHeartbeatBinario(ByteBuffer buf) {
+        try {
+            buf.get(); // tipo
+            byte versao = buf.get();
+            if (versao < 1 || versao > VERSAO_HEARTBEAT) {
+                System.out.println("[Gateway] Versão de heartbeat não suportada: " + versao);
+                return;
+            }
+            String id = lerTexto(buf);
+            String ip = null;
+            int porta = 0;
+            if (versao >= 2) {
+                ip = lerTexto(buf);
+                porta = buf.getInt();
+            }
+
+            long ultimoIndice = buf.getLong();
+            long aplicado = buf.getLong();
+            int fila = buf.getInt();
+            int p99 = buf.getInt();
+            long heapUsado = buf.getLong();
+            long heapMax = buf.getLong();
+            boolean lider = false;
+            long epoca = -1;
+            if (versao >= 3) {
+                lider = buf.get() == 1;
+                epoca = buf.getLong();
+            }
+
+            ServiceRegistry.Carga carga = new ServiceRegistry.Carga(
+                    ultimoIndice, aplicado, fila, p99, heapUsado, heapMax, lider, epoca);
+            ServiceRegistry.updateHeartbeat(id, carga, ip, porta);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            System.out.println("[Gateway] Heartbeat binário truncado (" + buf.limit() + " bytes)");
+        }
+    }
+
+    // short com o tamanho, seguido dos bytes em UTF-8
+    private static String lerTexto(ByteBuffer buf) {
+        int tamanho = buf.getShort() & 0xFFFF;
+        String s = new String(buf.array(), buf.position(), tamanho, StandardCharsets.UTF_8);
+        buf.position(buf.position() + tamanho);
+        return s;
+    }
+
     private void processHeartbeat(String msg) {
         String[] parts = msg.split(";");
         if (parts.length != 2) {
@@ -0,0 +1,120 @@
+package com.dist.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class CommandCodecTest {
+
+    private final Comando cmd = new Comando();
+
+    private Comando parse(String linha) {
+        ByteBuffer buf = ByteBuffer.wrap(linha.getBytes(StandardCharsets.UTF_8));
+        CommandCodec.parse(buf, 0, buf.limit(), cmd);
+        return cmd;
+    }
+
+    @Test
+    void linhaVaziaOuSoComEspacosEVazio() {
+        assertEquals(Comando.Tipo.VAZIO, parse("").getTipo());
+        assertEquals(Comando.Tipo.VAZIO, parse(" \t\r\n").getTipo());
+        assertEquals(0, cmd.getArgumentos());
+    }
+
+    @Test
+    void nomeNaoDiferenciaMaiusculas() {
+        assertEquals(Comando.Tipo.SET, parse("set a 1").getTipo());
+        assertEquals(Comando.Tipo.GET, parse("Get a").getTipo());
+        assertEquals(Comando.Tipo.STATUS, parse("sTaTuS").getTipo());
+        assertEquals(Comando.Tipo.QUIT, parse("quit").getTipo());
+    }
+
+    @Test
+    void nomeDesconhecidoOuParecido() {
+        assertEquals(Comando.Tipo.DESCONHECIDO, parse("DEL a").getTipo());
+        assertEquals(Comando.Tipo.DESCONHECIDO, parse("SETX a 1").getTipo());
+        assertEquals(Comando.Tipo.DESCONHECIDO, parse("GE a").getTipo());
+        assertEquals(Comando.Tipo.DESCONHECIDO, parse("çet a").getTipo());
+        // os argumentos continuam sendo lidos, para a mensagem de erro
+        assertEquals(1, cmd.getArgumentos());
+    }
+
+    @Test
+    void espacosETabsRepetidosSeparamOsArgumentos() {
+        parse("  \tSET \t chave   valor\r\n");
+        assertEquals(Comando.Tipo.SET, cmd.getTipo());
+        assertEquals(2, cmd.getArgumentos());
+        assertEquals("chave", cmd.chave());
+        assertEquals("valor", cmd.valor());
+    }
+
+    @Test
+    void argumentosAlemDoTerceiroSaoIgnorados() {
+        parse("SET a b c d e");
+        assertEquals(3, cmd.getArgumentos());
+        assertEquals("a", cmd.chave());
+        assertEquals("b", cmd.valor());
+    }
+
+    @Test
+    void casTemChaveEsperadoENovo() {
+        parse("CAS conta 10 ação");
+        assertEquals(Comando.Tipo.CAS, cmd.getTipo());
+        assertEquals(3, cmd.getArgumentos());
+        assertEquals("conta", cmd.chave());
+        assertEquals("10", cmd.valor());
+        StringBuilder sb = new StringBuilder();
+        cmd.appendExtraCodificado(sb);
+        assertEquals("a%C3%A7%C3%A3o", sb.toString());
+    }
+
+    @Test
+    void casSemONovoValorTemDoisArgumentos() {
+        assertEquals(2, parse("cas conta 10").getArgumentos());
+    }
+
+    @Test
+    void parseReaproveitaOComandoSemSobrasDoAnterior() {
+        parse("CAS a b c");
+        parse("GET x");
+        assertEquals(Comando.Tipo.GET, cmd.getTipo());
+        assertEquals(1, cmd.getArgumentos());
+        assertEquals("x", cmd.chave());
+        assertEquals("", cmd.valor());
+    }
+
+    @Test
+    void parseRespeitaOsLimitesDoBuffer() {
+        ByteBuffer buf = ByteBuffer.wrap("xxGET chave restoxx".getBytes(StandardCharsets.US_ASCII));
+        CommandCodec.parse(buf, 2, 11, cmd);
+        assertEquals(Comando.Tipo.GET, cmd.getTipo());
+        assertEquals(1, cmd.getArgumentos());
+        assertEquals("chave", cmd.chave());
+        assertEquals(0, buf.position());
+        assertEquals(buf.capacity(), buf.limit());
+    }
+
+    @Test
+    void scanViraOpcoesDeQuery() {
+        assertEquals("", opcoes("SCAN"));
+        assertEquals("&prefix=user%3A", opcoes("scan user:"));
+        assertEquals("&prefix=user%3A&limit=10&cursor=user%3A42",
+                opcoes("SCAN  user:\tlimit=10 cursor=user%3A42"));
+        // só cursor, start e end já vêm codificados; os outros valores são codificados aqui
+        assertEquals("&start=a+b&end=a%41&match=a%2B%2541", opcoes("SCAN start=a+b end=a%41 match=a+%41"));
+        assertEquals("&cursor=100%25", opcoes("SCAN cursor=100%"));
+        assertEquals("&CURSOR=user%3A1", opcoes("SCAN CURSOR=user:1"));
+        // '=' no começo não define nome de opção
+        assertEquals("&prefix=%3Dx", opcoes("SCAN =x"));
+    }
+
+    private String opcoes(String linha) {
+        parse(linha);
+        StringBuilder sb = new StringBuilder();
+        cmd.appendOpcoesCodificadas(sb);
+        return sb.toString();
+    }
+}
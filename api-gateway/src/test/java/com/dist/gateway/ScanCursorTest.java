@@ -0,0 +1,112 @@
+package com.dist.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Paginação do SCAN pelos protocolos de texto: o cliente devolve o
+ * "# cursor=" exatamente como a réplica mandou (já codificado).
+ */
+class ScanCursorTest {
+
+    private static final int LIMITE = 4;
+
+    @Test
+    void paginaChavesComDoisPontosSemRepetirPagina() {
+        TreeSet<String> chaves = new TreeSet<>();
+        for (int i = 0; i < 25; i++) {
+            chaves.add("user:" + i);
+        }
+        chaves.add("user:a b/ç");
+        // '%' e '+' literais: o cursor delas precisa voltar para a mesma chave
+        chaves.add("user:a%41");
+        chaves.add("user:aA");
+        chaves.add("user:100%");
+        chaves.add("user:x+y");
+
+        List<String> vistas = new ArrayList<>();
+        String cursor = null;
+        for (int pagina = 0; pagina < 100; pagina++) {
+            String linha = "SCAN user: limit=" + LIMITE + (cursor == null ? "" : " cursor=" + cursor);
+            Map<String, String> params = queryRecebidaPelaReplica(linha);
+            cursor = scanDaReplica(chaves, params, vistas);
+            if (cursor == null) break;
+        }
+
+        assertEquals(new ArrayList<>(chaves), vistas);
+    }
+
+    @Test
+    void startSemCodificacaoAindaECodificado() {
+        Map<String, String> params = queryRecebidaPelaReplica("SCAN start=user:3 end=user%3A7");
+        assertEquals("user:3", params.get("start"));
+        assertEquals("user:7", params.get("end"));
+    }
+
+    @Test
+    void percentSoltoNoCursorValePorSi() {
+        Map<String, String> params = queryRecebidaPelaReplica("SCAN cursor=100%");
+        assertEquals("100%", params.get("cursor"));
+    }
+
+    @Test
+    void escapeNoStartESempreDecodificado() {
+        assertEquals("aA", queryRecebidaPelaReplica("SCAN start=a%41").get("start"));
+        assertEquals("a%41", queryRecebidaPelaReplica("SCAN start=a%2541").get("start"));
+        assertEquals("x y", queryRecebidaPelaReplica("SCAN end=x+y").get("end"));
+        assertEquals("x+y", queryRecebidaPelaReplica("SCAN end=x%2By").get("end"));
+    }
+
+    @Test
+    void outrasOpcoesContinuamCodificadas() {
+        Map<String, String> params = queryRecebidaPelaReplica("SCAN prefix=a%41");
+        assertEquals("a%41", params.get("prefix"));
+    }
+
+    private static Map<String, String> queryRecebidaPelaReplica(String linha) {
+        byte[] bytes = linha.getBytes(StandardCharsets.UTF_8);
+        Comando cmd = new Comando();
+        CommandCodec.parse(ByteBuffer.wrap(bytes), 0, bytes.length, cmd);
+        assertEquals(Comando.Tipo.SCAN, cmd.tipo);
+
+        Map<String, String> params = new HashMap<>();
+        for (String par : CommandDispatcher.queryDoScan(cmd, LIMITE).split("&")) {
+            int igual = par.indexOf('=');
+            params.put(URLDecoder.decode(par.substring(0, igual), StandardCharsets.UTF_8),
+                    URLDecoder.decode(par.substring(igual + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    // Mesmo critério do ScanHandler da réplica: chaves > cursor, até o limite
+    private static String scanDaReplica(TreeSet<String> chaves, Map<String, String> params, List<String> vistas) {
+        String prefixo = params.getOrDefault("prefix", "");
+        String cursor = params.get("cursor");
+        int limite = Integer.parseInt(params.get("limit"));
+        String ultima = null;
+        int n = 0;
+        for (String chave : cursor == null ? chaves : chaves.tailSet(cursor, false)) {
+            if (!chave.startsWith(prefixo)) continue;
+            if (n == limite) {
+                return URLEncoder.encode(ultima, StandardCharsets.UTF_8);
+            }
+            assertTrue(vistas.size() <= chaves.size(), "paginação não termina");
+            vistas.add(chave);
+            ultima = chave;
+            n++;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,24 @@
+package com.dist.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ponto de entrada do benchmarks.jar.
+ *
+ * Repassa os argumentos para o org.openjdk.jmh.Main, acrescentando
+ * "-prof gc" quando nenhum profiler foi pedido, para que toda execução
+ * já reporte alocação por operação (gc.alloc.rate.norm).
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        List<String> argumentos = new ArrayList<>(Arrays.asList(args));
+        if (!argumentos.contains("-prof") && !argumentos.contains("-lprof")) {
+            argumentos.add(0, "gc");
+            argumentos.add(0, "-prof");
+        }
+        org.openjdk.jmh.Main.main(argumentos.toArray(new String[0]));
+    }
+}
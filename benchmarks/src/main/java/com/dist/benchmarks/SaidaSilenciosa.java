@@ -0,0 +1,31 @@
+package com.dist.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Os caminhos medidos fazem System.out.println a cada operação.
+ * Para medir CPU/alocação do código (e não o terminal), os benchmarks
+ * redirecionam a saída padrão para um stream nulo durante a execução.
+ */
+public final class SaidaSilenciosa {
+
+    private static PrintStream original;
+
+    private SaidaSilenciosa() {
+    }
+
+    public static synchronized void ligar() {
+        if (original == null) {
+            original = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+    }
+
+    public static synchronized void desligar() {
+        if (original != null) {
+            System.setOut(original);
+            original = null;
+        }
+    }
+}
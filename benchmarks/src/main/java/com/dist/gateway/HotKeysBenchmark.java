@@ -0,0 +1,52 @@
+package com.dist.gateway;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo do HotKeys.registrar no caminho de cada GET/SET, com uma thread e
+ * com várias disputando os mesmos contadores.
+ *
+ * Metade das chamadas vai para uma única chave quente (o pior caso de
+ * disputa no sketch e no mapa de candidatas); o resto se espalha por
+ * 10 mil chaves.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotKeysBenchmark {
+
+    private static final int CHAVES = 10_000;
+
+    private String[] queries;
+
+    @Setup
+    public void setup() {
+        queries = new String[CHAVES];
+        for (int i = 0; i < CHAVES; i++) {
+            queries[i] = "key=user" + i;
+        }
+    }
+
+    private String proxima() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        return r.nextBoolean() ? queries[0] : queries[r.nextInt(CHAVES)];
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void registrar_1Thread() {
+        HotKeys.LEITURAS.registrar(proxima());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void registrar_8Threads() {
+        HotKeys.LEITURAS.registrar(proxima());
+    }
+}
@@ -0,0 +1,73 @@
+package com.dist.gateway;
+
+import com.dist.benchmarks.SaidaSilenciosa;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing de comandos de texto compartilhado por TCPServer e UDPCommandServer
+ * (CommandCodec) e o despacho até a montagem da query (CommandDispatcher).
+ *
+ * O registro fica vazio, então SET/GET param logo após a busca do nó
+ * ("nenhum líder ativo") e o que se mede é o parsing + a consulta ao
+ * ServiceRegistry, sem nenhuma chamada HTTP.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessarComandoBenchmark {
+
+    @Param({"SET user42 abc123", "GET user42", "  get   user42  ", "STATUS", "FOO bar"})
+    public String comando;
+
+    private ByteBuffer heap;
+    private ByteBuffer direto;
+    private final Comando cmd = new Comando();
+    private TCPServer tcp;
+    private UDPCommandServer udp;
+
+    @Setup
+    public void setup() {
+        SaidaSilenciosa.ligar();
+        byte[] bytes = comando.getBytes(StandardCharsets.UTF_8);
+        heap = ByteBuffer.wrap(bytes);
+        direto = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        tcp = new TCPServer(0);
+        udp = new UDPCommandServer(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SaidaSilenciosa.desligar();
+    }
+
+    @Benchmark
+    public Comando.Tipo parseHeap() {
+        CommandCodec.parse(heap, 0, heap.limit(), cmd);
+        return cmd.getTipo();
+    }
+
+    @Benchmark
+    public Comando.Tipo parseDireto() {
+        CommandCodec.parse(direto, 0, direto.limit(), cmd);
+        return cmd.getTipo();
+    }
+
+    @Benchmark
+    public String tcp() {
+        CommandCodec.parse(heap, 0, heap.limit(), cmd);
+        return tcp.processarComando(cmd);
+    }
+
+    @Benchmark
+    public String udp() {
+        CommandCodec.parse(heap, 0, heap.limit(), cmd);
+        return udp.processarComando(cmd);
+    }
+}
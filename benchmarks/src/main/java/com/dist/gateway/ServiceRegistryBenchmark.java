@@ -0,0 +1,64 @@
+package com.dist.gateway;
+
+import com.dist.benchmarks.SaidaSilenciosa;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seleção de nó no ServiceRegistry sob contenção: todo SET chama
+ * getLeaderAtivo (que entra no garantirLeaderAtivo sincronizado) e todo
+ * GET chama getNodeParaGet (lista nova + round-robin atômico).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServiceRegistryBenchmark {
+
+    @Param({"3", "9"})
+    public int nos;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        SaidaSilenciosa.ligar();
+        for (int i = 0; i < nos; i++) {
+            ServiceRegistry.registerNode("N" + i, "localhost", 5000 + i, i == 0 ? "LEADER" : "FOLLOWER");
+        }
+        // sem líder o registro espera um intervalo de heartbeat antes de eleger
+        while (ServiceRegistry.getLeaderAtivo() == null) {
+            Thread.sleep(100);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        SaidaSilenciosa.desligar();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ServiceRegistry.NodeInfo getNodeParaGet_1Thread() {
+        return ServiceRegistry.getNodeParaGet();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ServiceRegistry.NodeInfo getNodeParaGet_8Threads() {
+        return ServiceRegistry.getNodeParaGet();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ServiceRegistry.NodeInfo getLeaderAtivo_1Thread() {
+        return ServiceRegistry.getLeaderAtivo();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ServiceRegistry.NodeInfo getLeaderAtivo_8Threads() {
+        return ServiceRegistry.getLeaderAtivo();
+    }
+}
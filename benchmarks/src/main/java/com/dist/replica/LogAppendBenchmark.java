@@ -0,0 +1,70 @@
+package com.dist.replica;
+
+import com.dist.benchmarks.SaidaSilenciosa;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * O caminho de escrita do SET (executarOperacao: lock de escrita,
+ * append no log e aplicação no estado) com vários escritores
+ * concorrentes, como acontece no líder durante uma rajada de SETs.
+ *
+ * O log e o estado são limpos a cada iteração para que o crescimento
+ * da lista não domine a medição.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogAppendBenchmark {
+
+    @Param({"1024"})
+    public int chaves;
+
+    private String[] keys;
+    private final Map<String, String> params = Map.of("value", "valor");
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SaidaSilenciosa.ligar();
+        keys = new String[chaves];
+        for (int i = 0; i < chaves; i++) {
+            keys[i] = "key-" + i;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void limpar() {
+        synchronized (ReplicaNodeApplication.LOG) {
+            ReplicaNodeApplication.LOG.clear();
+        }
+        ReplicaNodeApplication.STATE.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SaidaSilenciosa.desligar();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ReplicaNodeApplication.LogEntry set_1Escritor() throws Exception {
+        return set();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ReplicaNodeApplication.LogEntry set_8Escritores() throws Exception {
+        return set();
+    }
+
+    private ReplicaNodeApplication.LogEntry set() throws Exception {
+        String key = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+        return ReplicaNodeApplication.executarOperacao("set", key, params);
+    }
+}
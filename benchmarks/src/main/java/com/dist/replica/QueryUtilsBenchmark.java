@@ -0,0 +1,41 @@
+package com.dist.replica;
+
+import com.dist.benchmarks.SaidaSilenciosa;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QueryUtils.parseQuery: chamado em todo /set, /get e /append da réplica.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryUtilsBenchmark {
+
+    @Param({
+            "key=user42",
+            "key=user42&value=abc123",
+            "index=123456&key=sess%3Auser%2F42&value=caf%C3%A9+com+leite"
+    })
+    public String query;
+
+    @Setup
+    public void setup() {
+        SaidaSilenciosa.ligar();
+    }
+
+    @TearDown
+    public void tearDown() {
+        SaidaSilenciosa.desligar();
+    }
+
+    @Benchmark
+    public Map<String, String> parseQuery() {
+        return ReplicaNodeApplication.QueryUtils.parseQuery(query);
+    }
+}
@@ -0,0 +1,223 @@
+package com.dist.loadgen;
+
+import com.dist.gateway.LatencyHistogram;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Executa a carga contra o Gateway e mede a latência sem "coordinated omission".
+ *
+ *  - Laço ABERTO: as operações têm horário previsto fixo (taxa constante).
+ *    Um despachante entrega cada operação no horário previsto a um pool de
+ *    threads; se o sistema atrasa, a fila cresce e o atraso entra na latência,
+ *    porque ela é medida a partir do horário previsto, não do envio.
+ *  - Laço FECHADO: cada cliente faz uma operação por vez. Com taxa alvo, cada
+ *    cliente segue o seu próprio cronograma e a latência também é medida do
+ *    horário previsto (como o wrk2). Sem taxa alvo não há cronograma, então a
+ *    latência "corrigida" é igual ao tempo de serviço.
+ */
+public class Carga {
+
+    public enum Modo { ABERTO, FECHADO }
+
+    public static class Config {
+        Modo modo = Modo.FECHADO;
+        String protocolo = "http";
+        // host[:porta] de cada Gateway; cada conexão nova vai para o próximo da lista
+        String[] gateways = {"localhost"};
+        private final java.util.concurrent.atomic.AtomicInteger proximoGateway =
+                new java.util.concurrent.atomic.AtomicInteger();
+        int clientes = 16;
+        double taxa = 0;          // ops/s no total (0 = o mais rápido possível, só laço fechado)
+        Duration duracao = Duration.ofSeconds(30);
+        Duration aquecimento = Duration.ofSeconds(5);
+        Duration timeout = Duration.ofSeconds(2);
+        double fracaoLeituras = 0.9;
+        long chaves = 10_000;
+        String distribuicao = "uniforme";
+        double zipfTheta = 0.99;
+        int tamanhoValor = 16;
+
+        String proximoGateway() {
+            return gateways[Math.floorMod(proximoGateway.getAndIncrement(), gateways.length)];
+        }
+    }
+
+    public static class Resultado {
+        final LatencyHistogram corrigida = new LatencyHistogram();
+        final LatencyHistogram servico = new LatencyHistogram();
+        final LatencyHistogram leituras = new LatencyHistogram();
+        final LatencyHistogram escritas = new LatencyHistogram();
+        final AtomicLong ok = new AtomicLong();
+        final AtomicLong erros = new AtomicLong();
+        volatile long duracaoMedidaNanos;
+    }
+
+    private final Config config;
+    private final GeradorDeChaves chaves;
+    private final String valor;
+
+    public Carga(Config config) {
+        this.config = config;
+        this.chaves = GeradorDeChaves.criar(config.distribuicao, config.chaves, config.zipfTheta);
+        this.valor = "v".repeat(Math.max(1, config.tamanhoValor));
+    }
+
+    /** Grava todas as chaves uma vez, para que os GETs encontrem valor. */
+    public void preencher() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        AtomicLong proxima = new AtomicLong();
+        for (int t = 0; t < config.clientes; t++) {
+            Thread th = new Thread(() -> {
+                try (Cliente c = Cliente.criar(config.protocolo, config.proximoGateway(), config.timeout)) {
+                    long k;
+                    while ((k = proxima.getAndIncrement()) < config.chaves) {
+                        c.set("k" + k, valor);
+                    }
+                } catch (Exception e) {
+                    System.out.println("[LoadGen] Erro ao preencher chaves: " + e.getMessage());
+                }
+            });
+            th.start();
+            threads.add(th);
+        }
+        for (Thread th : threads) {
+            th.join();
+        }
+    }
+
+    public Resultado executar() throws Exception {
+        Resultado r = new Resultado();
+        if (config.modo == Modo.ABERTO) {
+            executarAberto(r);
+        } else {
+            executarFechado(r);
+        }
+        return r;
+    }
+
+    private void executarAberto(Resultado r) throws Exception {
+        if (config.taxa <= 0) {
+            throw new IllegalArgumentException("Laço aberto precisa de --taxa > 0");
+        }
+        ThreadLocal<Cliente> clientes = new ThreadLocal<>();
+        List<Cliente> todos = java.util.Collections.synchronizedList(new ArrayList<>());
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(config.clientes, config.clientes,
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        ThreadLocal<SplittableRandom> rnds = ThreadLocal.withInitial(SplittableRandom::new);
+
+        long intervalo = (long) (1_000_000_000L / config.taxa);
+        long inicio = System.nanoTime();
+        long inicioMedicao = inicio + config.aquecimento.toNanos();
+        long fim = inicioMedicao + config.duracao.toNanos();
+
+        for (long i = 0; ; i++) {
+            long previsto = inicio + i * intervalo;
+            if (previsto >= fim) break;
+            esperarAte(previsto);
+            pool.execute(() -> {
+                Cliente c = clientes.get();
+                if (c == null) {
+                    try {
+                        c = Cliente.criar(config.protocolo, config.proximoGateway(), config.timeout);
+                    } catch (Exception e) {
+                        if (previsto >= inicioMedicao) r.erros.incrementAndGet();
+                        return;
+                    }
+                    clientes.set(c);
+                    todos.add(c);
+                }
+                executarOperacao(c, rnds.get(), previsto, previsto >= inicioMedicao, r);
+            });
+        }
+
+        pool.shutdown();
+        pool.awaitTermination(config.timeout.toMillis() * 2 + 60_000, TimeUnit.MILLISECONDS);
+        // Operações que terminaram depois do fim também contam: a fila é parte da carga
+        r.duracaoMedidaNanos = Math.max(config.duracao.toNanos(), System.nanoTime() - inicioMedicao);
+        for (Cliente c : todos) {
+            c.close();
+        }
+    }
+
+    private void executarFechado(Resultado r) throws Exception {
+        long inicio = System.nanoTime();
+        long inicioMedicao = inicio + config.aquecimento.toNanos();
+        long fim = inicioMedicao + config.duracao.toNanos();
+        long intervaloPorCliente = config.taxa > 0
+                ? (long) (1_000_000_000L * config.clientes / config.taxa)
+                : 0;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < config.clientes; t++) {
+            Thread th = new Thread(() -> {
+                SplittableRandom rnd = new SplittableRandom();
+                Cliente c = null;
+                try {
+                    c = Cliente.criar(config.protocolo, config.proximoGateway(), config.timeout);
+                    long previsto = System.nanoTime();
+                    while (true) {
+                        long agora = System.nanoTime();
+                        if (agora >= fim) break;
+                        if (intervaloPorCliente > 0) {
+                            esperarAte(previsto);
+                        } else {
+                            previsto = agora;
+                        }
+                        executarOperacao(c, rnd, previsto, previsto >= inicioMedicao, r);
+                        previsto += intervaloPorCliente;
+                    }
+                } catch (Exception e) {
+                    System.out.println("[LoadGen] Cliente encerrado por erro: " + e.getMessage());
+                } finally {
+                    if (c != null) c.close();
+                }
+            });
+            th.start();
+            threads.add(th);
+        }
+        for (Thread th : threads) {
+            th.join();
+        }
+        r.duracaoMedidaNanos = config.duracao.toNanos();
+    }
+
+    private void executarOperacao(Cliente c, SplittableRandom rnd, long previsto, boolean medir, Resultado r) {
+        String key = "k" + chaves.proxima(rnd);
+        boolean leitura = rnd.nextDouble() < config.fracaoLeituras;
+        long inicioReal = System.nanoTime();
+        boolean ok;
+        try {
+            ok = leitura ? c.get(key) : c.set(key, valor);
+        } catch (Exception e) {
+            ok = false;
+        }
+        long termino = System.nanoTime();
+        if (!medir) return;
+
+        long corrigida = termino - previsto;
+        r.corrigida.recordNanos(corrigida);
+        r.servico.recordNanos(termino - inicioReal);
+        (leitura ? r.leituras : r.escritas).recordNanos(corrigida);
+        (ok ? r.ok : r.erros).incrementAndGet();
+    }
+
+    private static void esperarAte(long nanos) {
+        long falta;
+        while ((falta = nanos - System.nanoTime()) > 0) {
+            if (falta > 100_000) {
+                LockSupport.parkNanos(falta - 50_000);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.dist.loadgen;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Cliente de um protocolo do Gateway. Cada thread de carga usa a sua
+ * própria instância (conexão TCP / socket UDP dedicados).
+ *
+ * Os métodos devolvem true quando a resposta não é erro. GET de chave
+ * inexistente (404 / "Chave não encontrada") conta como sucesso.
+ */
+public interface Cliente extends AutoCloseable {
+
+    boolean set(String key, String value) throws IOException;
+
+    boolean get(String key) throws IOException;
+
+    @Override
+    default void close() {
+    }
+
+    /** endereco = host ou host:porta; sem porta, a padrão do protocolo no Gateway. */
+    static Cliente criar(String protocolo, String endereco, Duration timeout) throws IOException {
+        int sep = endereco.lastIndexOf(':');
+        String host = sep < 0 ? endereco : endereco.substring(0, sep);
+        int porta = sep < 0 ? -1 : Integer.parseInt(endereco.substring(sep + 1));
+        switch (protocolo.toLowerCase()) {
+            case "http":
+                return new Http(host, porta < 0 ? 8080 : porta, timeout);
+            case "tcp":
+                return new Tcp(host, porta < 0 ? 9000 : porta, timeout);
+            case "udp":
+                return new Udp(host, porta < 0 ? 9001 : porta, timeout);
+            default:
+                throw new IllegalArgumentException("Protocolo desconhecido: " + protocolo);
+        }
+    }
+
+    class Http implements Cliente {
+        // HttpClient é thread-safe; um só para todas as threads reaproveita conexões
+        private static final HttpClient CLIENT = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+
+        private final String baseUrl;
+        private final Duration timeout;
+
+        Http(String host, int port, Duration timeout) {
+            this.baseUrl = "http://" + host + ":" + port;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public boolean set(String key, String value) throws IOException {
+            return enviar(baseUrl + "/set?key=" + enc(key) + "&value=" + enc(value));
+        }
+
+        @Override
+        public boolean get(String key) throws IOException {
+            return enviar(baseUrl + "/get?key=" + enc(key));
+        }
+
+        private boolean enviar(String url) throws IOException {
+            HttpRequest req = HttpRequest.newBuilder(URI.create(url)).timeout(timeout).GET().build();
+            try {
+                HttpResponse<Void> resp = CLIENT.send(req, HttpResponse.BodyHandlers.discarding());
+                return resp.statusCode() < 500;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+
+        private static String enc(String s) {
+            return URLEncoder.encode(s, StandardCharsets.UTF_8);
+        }
+    }
+
+    class Tcp implements Cliente {
+        private final Socket socket;
+        private final OutputStream out;
+        private final BufferedReader in;
+
+        Tcp(String host, int port, Duration timeout) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), (int) timeout.toMillis());
+            socket.setSoTimeout((int) timeout.toMillis());
+            out = socket.getOutputStream();
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public boolean set(String key, String value) throws IOException {
+            return enviar("SET " + key + " " + value + "\n");
+        }
+
+        @Override
+        public boolean get(String key) throws IOException {
+            return enviar("GET " + key + "\n");
+        }
+
+        private boolean enviar(String linha) throws IOException {
+            out.write(linha.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            String resp = in.readLine();
+            if (resp == null) {
+                throw new IOException("Conexão TCP encerrada pelo Gateway");
+            }
+            return !resp.startsWith("ERRO");
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * UDP não tem id de requisição: depois de um timeout, respostas atrasadas
+     * são descartadas antes do próximo envio para não serem confundidas.
+     */
+    class Udp implements Cliente {
+        private final DatagramSocket socket;
+        private final InetSocketAddress destino;
+        private final byte[] buffer = new byte[64 * 1024];
+        private boolean houveTimeout;
+
+        Udp(String host, int port, Duration timeout) throws IOException {
+            socket = new DatagramSocket();
+            socket.setSoTimeout((int) timeout.toMillis());
+            destino = new InetSocketAddress(host, port);
+        }
+
+        @Override
+        public boolean set(String key, String value) throws IOException {
+            return enviar("SET " + key + " " + value);
+        }
+
+        @Override
+        public boolean get(String key) throws IOException {
+            return enviar("GET " + key);
+        }
+
+        private boolean enviar(String msg) throws IOException {
+            if (houveTimeout) {
+                descartarAtrasadas();
+                houveTimeout = false;
+            }
+            byte[] data = msg.getBytes(StandardCharsets.UTF_8);
+            socket.send(new DatagramPacket(data, data.length, destino));
+            DatagramPacket resp = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(resp);
+            } catch (java.net.SocketTimeoutException e) {
+                houveTimeout = true;
+                throw e;
+            }
+            return !(resp.getLength() >= 4
+                    && buffer[0] == 'E' && buffer[1] == 'R' && buffer[2] == 'R' && buffer[3] == 'O');
+        }
+
+        private void descartarAtrasadas() throws IOException {
+            int timeoutOriginal = socket.getSoTimeout();
+            socket.setSoTimeout(1);
+            try {
+                while (true) {
+                    socket.receive(new DatagramPacket(buffer, buffer.length));
+                }
+            } catch (java.net.SocketTimeoutException e) {
+                // nada pendente
+            } finally {
+                socket.setSoTimeout(timeoutOriginal);
+            }
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.dist.loadgen;
+
+import com.dist.gateway.ApiGatewayApplication;
+import com.dist.replica.ReplicaNodeApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sobe um Gateway + N réplicas locais para o teste de carga.
+ *
+ * Modos:
+ *  - PROCESSOS: cada componente é um processo java separado (o mais fiel)
+ *  - EM_PROCESSO: tudo na mesma JVM; cada componente ganha o seu próprio
+ *    ClassLoader, porque Gateway e réplica guardam o estado em campos static
+ *
+ * O Gateway usa as portas fixas (8080/8000/9000/9001), pois as réplicas
+ * apontam para elas; as réplicas usam portaBase, portaBase+1, ...
+ */
+public class Cluster implements AutoCloseable {
+
+    public enum Modo { PROCESSOS, EM_PROCESSO }
+
+    private static final String GATEWAY_METRICS = "http://localhost:8080/metrics";
+    private static final String GATEWAY_STATUS = "http://localhost:8080/status";
+
+    private final Modo modo;
+    private final int portaBase;
+    private final Path diretorioDeLogs;
+    private final List<Process> processos = new ArrayList<>();
+    private final List<Process> replicas = new ArrayList<>();
+
+    public Cluster(Modo modo, int portaBase, Path diretorioDeLogs) {
+        this.modo = modo;
+        this.portaBase = portaBase;
+        this.diretorioDeLogs = diretorioDeLogs;
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /** Sobe o Gateway e as réplicas e espera todas aparecerem ativas no registro, com um líder. */
+    public void iniciar(int numReplicas) throws Exception {
+        iniciarGateway();
+        // REGISTER é enviado uma única vez: o Gateway precisa estar de pé antes das réplicas
+        aguardarNosAtivos(0, Duration.ofSeconds(30));
+
+        for (int i = 0; i < numReplicas; i++) {
+            iniciarReplica(i);
+        }
+        aguardarNosAtivos(numReplicas, Duration.ofSeconds(30));
+        // o Gateway só elege depois de um intervalo de heartbeat dos nós
+        aguardarLider(Duration.ofSeconds(30));
+    }
+
+    /**
+     * O registro do Gateway fica no diretório de logs deste cluster: um
+     * registro-G8080.txt de outra execução traria nós, líder e época antigos.
+     */
+    public void iniciarGateway() throws Exception {
+        String registro = "--arquivoRegistro=" + diretorioDeLogs.resolve("registro-gateway.txt");
+        if (modo == Modo.PROCESSOS) {
+            processos.add(iniciarProcesso(ApiGatewayApplication.class.getName(), "gateway", registro));
+        } else {
+            iniciarEmProcesso(ApiGatewayApplication.class, new String[]{registro});
+        }
+    }
+
+    /** Sobe a réplica i (porta portaBase + i, id "R" + i); a primeira é o líder sugerido. */
+    public void iniciarReplica(int i) throws Exception {
+        String[] args = argumentosDaReplica(i);
+        if (modo == Modo.PROCESSOS) {
+            Process p = iniciarProcesso(ReplicaNodeApplication.class.getName(), "replica-" + i, args);
+            processos.add(p);
+            while (replicas.size() <= i) replicas.add(null);
+            replicas.set(i, p);
+        } else {
+            iniciarEmProcesso(ReplicaNodeApplication.class, args);
+        }
+    }
+
+    /** Processo da réplica i (só no modo PROCESSOS). */
+    public Process processoDaReplica(int i) {
+        if (modo != Modo.PROCESSOS) {
+            throw new IllegalStateException("Controle de processos só existe no modo PROCESSOS");
+        }
+        return replicas.get(i);
+    }
+
+    public int portaDaReplica(int i) {
+        return portaBase + i;
+    }
+
+    public String idDaReplica(int i) {
+        return "R" + i;
+    }
+
+    private String[] argumentosDaReplica(int i) {
+        return new String[]{
+                "--port=" + portaDaReplica(i),
+                "--nodeId=" + idDaReplica(i),
+                "--role=" + (i == 0 ? "LEADER" : "FOLLOWER")
+        };
+    }
+
+    public void aguardarNosAtivos(int esperados, Duration limite) throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        long fim = System.nanoTime() + limite.toNanos();
+        while (System.nanoTime() < fim) {
+            try {
+                HttpResponse<String> resp = client.send(
+                        HttpRequest.newBuilder(URI.create(GATEWAY_METRICS)).GET().build(),
+                        HttpResponse.BodyHandlers.ofString());
+                if (nosAtivos(resp.body()) >= esperados) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Gateway ainda subindo
+            }
+            Thread.sleep(200);
+        }
+        throw new IllegalStateException("Cluster não ficou pronto: esperava " + esperados + " nós ativos");
+    }
+
+    private void aguardarLider(Duration limite) throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        long fim = System.nanoTime() + limite.toNanos();
+        while (System.nanoTime() < fim) {
+            try {
+                HttpResponse<String> resp = client.send(
+                        HttpRequest.newBuilder(URI.create(GATEWAY_STATUS)).GET().build(),
+                        HttpResponse.BodyHandlers.ofString());
+                if (resp.body().contains("\"leader\":\"")) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Gateway ocupado; tenta de novo
+            }
+            Thread.sleep(200);
+        }
+        throw new IllegalStateException("Cluster não ficou pronto: nenhum líder eleito");
+    }
+
+    private static int nosAtivos(String metrics) {
+        for (String linha : metrics.split("\n")) {
+            if (linha.startsWith("gateway_active_nodes ")) {
+                return Integer.parseInt(linha.substring("gateway_active_nodes ".length()).trim());
+            }
+        }
+        return 0;
+    }
+
+    private Process iniciarProcesso(String mainClass, String nome, String... args) throws IOException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        cmd.add("-cp");
+        cmd.add(classpathDe(ApiGatewayApplication.class) + File.pathSeparator
+                + classpathDe(ReplicaNodeApplication.class));
+        cmd.add(mainClass);
+        cmd.addAll(List.of(args));
+
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.directory(diretorioDeLogs.toFile());
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(diretorioDeLogs.resolve(nome + ".log").toFile());
+        System.out.println("[LoadGen] Iniciando " + nome + ": " + String.join(" ", cmd));
+        return pb.start();
+    }
+
+    private static void iniciarEmProcesso(Class<?> mainClass, String[] args) throws Exception {
+        URL[] urls = {mainClass.getProtectionDomain().getCodeSource().getLocation()};
+        URLClassLoader loader = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader());
+        Class<?> isolada = Class.forName(mainClass.getName(), true, loader);
+        Method main = isolada.getMethod("main", String[].class);
+
+        Thread t = new Thread(() -> {
+            try {
+                main.invoke(null, (Object) args);
+            } catch (Exception e) {
+                System.out.println("[LoadGen] Falha ao iniciar " + mainClass.getSimpleName() + ": " + e);
+            }
+        }, mainClass.getSimpleName() + "-main");
+        t.setContextClassLoader(loader);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static String classpathDe(Class<?> c) {
+        try {
+            return Path.of(c.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("Não foi possível localizar " + c.getName(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Process p : processos) {
+            p.destroy();
+        }
+        for (Process p : processos) {
+            try {
+                if (!p.waitFor(5, java.util.concurrent.TimeUnit.SECONDS)) {
+                    p.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                p.destroyForcibly();
+            }
+        }
+        processos.clear();
+    }
+}
@@ -0,0 +1,129 @@
+package com.dist.loadgen;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Faz SETs em ritmo fixo pelo Gateway (HTTP) durante um cenário de falha,
+ * guardando o resultado de cada um para calcular a janela de indisponibilidade
+ * e depois conferir se as escritas confirmadas sobreviveram.
+ *
+ * Cada SET usa uma chave nova ("fo-<seq>") com valor igual ao seq.
+ */
+public class EscritorContinuo implements Runnable {
+
+    /** Resultado de um SET: instante (nanoTime) e status HTTP (0 = exceção/timeout). */
+    public static class Tentativa {
+        public final long nanos;
+        public final int status;
+        public final long seq;
+
+        Tentativa(long nanos, int status, long seq) {
+            this.nanos = nanos;
+            this.status = status;
+            this.seq = seq;
+        }
+
+        public boolean ok() {
+            return status == 200;
+        }
+
+        public String chave() {
+            return "fo-" + seq;
+        }
+
+        public String valor() {
+            return Long.toString(seq);
+        }
+    }
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(2))
+            .build();
+    private final String gatewayUrl;
+    private final long intervaloNanos;
+    private final AtomicLong seq = new AtomicLong();
+    private final List<Tentativa> tentativas = new ArrayList<>();
+    private final Map<String, String> confirmadas = new ConcurrentHashMap<>();
+    private volatile boolean rodando = true;
+
+    public EscritorContinuo(String gatewayUrl, int escritasPorSegundo) {
+        this.gatewayUrl = gatewayUrl;
+        this.intervaloNanos = 1_000_000_000L / escritasPorSegundo;
+    }
+
+    @Override
+    public void run() {
+        long proximo = System.nanoTime();
+        while (rodando) {
+            long agora = System.nanoTime();
+            if (agora < proximo) {
+                try {
+                    Thread.sleep(Math.max(1, (proximo - agora) / 1_000_000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            proximo += intervaloNanos;
+
+            long s = seq.incrementAndGet();
+            String key = "fo-" + s;
+            String value = Long.toString(s);
+            int status;
+            try {
+                HttpRequest req = HttpRequest.newBuilder(
+                                URI.create(gatewayUrl + "/set?key=" + key + "&value=" + value))
+                        .timeout(Duration.ofSeconds(2))
+                        .GET()
+                        .build();
+                status = client.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                status = 0;
+            }
+            if (status == 200) {
+                confirmadas.put(key, value);
+            }
+            synchronized (tentativas) {
+                tentativas.add(new Tentativa(System.nanoTime(), status, s));
+            }
+        }
+    }
+
+    public void parar() {
+        rodando = false;
+    }
+
+    public List<Tentativa> getTentativas() {
+        synchronized (tentativas) {
+            return new ArrayList<>(tentativas);
+        }
+    }
+
+    /** Escritas que o Gateway confirmou com 200 (chave -> valor). */
+    public Map<String, String> getConfirmadas() {
+        return confirmadas;
+    }
+
+    /** Escritas confirmadas entre os instantes 'de' e 'ate' (nanoTime), da mais antiga à mais nova. */
+    public List<Tentativa> confirmadasEntre(long de, long ate) {
+        List<Tentativa> dentro = new ArrayList<>();
+        for (Tentativa t : getTentativas()) {
+            if (t.ok() && t.nanos >= de && t.nanos <= ate) {
+                dentro.add(t);
+            }
+        }
+        dentro.sort((a, b) -> Long.compare(a.seq, b.seq));
+        return dentro;
+    }
+}
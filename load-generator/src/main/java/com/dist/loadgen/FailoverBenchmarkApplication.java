@@ -0,0 +1,331 @@
+package com.dist.loadgen;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cenários de falha e recuperação sobre um cluster de processos locais.
+ *
+ * Cenários (--cenario=):
+ *   lider     mata o líder (kill -9), espera a eleição e reinicia o nó
+ *   follower  mata um follower, espera alguns segundos e reinicia o nó
+ *   pausa     congela o líder com SIGSTOP (para os heartbeats) e depois SIGCONT
+ *   todos     roda os três em sequência (padrão)
+ *
+ * Para cada cenário mede:
+ *   - tempo até o ServiceRegistry eleger um novo líder
+ *   - janela em que os SETs falharam (502, 503 ou timeout)
+ *   - escritas confirmadas perdidas no líder e chaves divergentes entre réplicas
+ *   - tempo até o nó reiniciado servir todas as escritas confirmadas enquanto
+ *     ele estava fora, da mais antiga à mais nova; as que ele não servir
+ *     dentro do limite saem como perdidas ou divergentes nesse nó
+ *
+ * Outros argumentos: --replicas=3 --escritas=20 (SET/s) --pausa=25 (s)
+ *                    --catchUp=60 (s, limite de espera pelo nó reiniciado)
+ */
+public class FailoverBenchmarkApplication {
+
+    private static final String GATEWAY = "http://localhost:8080";
+    private static final int PORTA_BASE = 5000;
+
+    private static final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    private static int replicas = 3;
+    private static int escritasPorSegundo = 20;
+    private static int pausaSegundos = 25;
+    private static int catchUpSegundos = 60;
+
+    public static void main(String[] args) throws Exception {
+        String cenario = "todos";
+        for (String arg : args) {
+            if (arg.startsWith("--cenario=")) {
+                cenario = arg.substring("--cenario=".length());
+            } else if (arg.startsWith("--replicas=")) {
+                replicas = Integer.parseInt(arg.substring("--replicas=".length()));
+            } else if (arg.startsWith("--escritas=")) {
+                escritasPorSegundo = Integer.parseInt(arg.substring("--escritas=".length()));
+            } else if (arg.startsWith("--pausa=")) {
+                pausaSegundos = Integer.parseInt(arg.substring("--pausa=".length()));
+            } else if (arg.startsWith("--catchUp=")) {
+                catchUpSegundos = Integer.parseInt(arg.substring("--catchUp=".length()));
+            }
+        }
+        if (replicas < 2) {
+            throw new IllegalArgumentException("Os cenários precisam de pelo menos 2 réplicas");
+        }
+
+        List<String> relatorios = new ArrayList<>();
+        if (cenario.equals("lider") || cenario.equals("todos")) {
+            relatorios.add(executar("lider"));
+        }
+        if (cenario.equals("follower") || cenario.equals("todos")) {
+            relatorios.add(executar("follower"));
+        }
+        if (cenario.equals("pausa") || cenario.equals("todos")) {
+            relatorios.add(executar("pausa"));
+        }
+
+        System.out.println();
+        for (String r : relatorios) {
+            System.out.println(r);
+        }
+        System.exit(0);
+    }
+
+    private static String executar(String cenario) throws Exception {
+        Path logs = Files.createTempDirectory("dist-failover-" + cenario);
+        System.out.println("[Failover] Cenário '" + cenario + "' (logs em " + logs + ")");
+
+        try (Cluster cluster = new Cluster(Cluster.Modo.PROCESSOS, PORTA_BASE, logs)) {
+            cluster.iniciar(replicas);
+            String liderInicial = aguardarLider(null, Duration.ofSeconds(10));
+
+            EscritorContinuo escritor = new EscritorContinuo(GATEWAY, escritasPorSegundo);
+            Thread t = new Thread(escritor, "escritor-failover");
+            t.start();
+            Thread.sleep(3000);
+
+            int alvo = cenario.equals("follower") ? indiceDeOutro(liderInicial) : indiceDe(liderInicial);
+            Process processo = cluster.processoDaReplica(alvo);
+
+            long tEvento = System.nanoTime();
+            String novoLider = null;
+            long eleicaoNanos = -1;
+            long tRestart;
+
+            switch (cenario) {
+                case "lider":
+                    processo.destroyForcibly().waitFor();
+                    novoLider = aguardarLider(liderInicial, Duration.ofSeconds(60));
+                    eleicaoNanos = System.nanoTime() - tEvento;
+                    Thread.sleep(3000);
+                    tRestart = System.nanoTime();
+                    cluster.iniciarReplica(alvo);
+                    break;
+
+                case "follower":
+                    processo.destroyForcibly().waitFor();
+                    Thread.sleep(5000);
+                    tRestart = System.nanoTime();
+                    cluster.iniciarReplica(alvo);
+                    break;
+
+                case "pausa":
+                    sinal(processo, "STOP");
+                    novoLider = aguardarLider(liderInicial, Duration.ofSeconds(pausaSegundos + 60L));
+                    eleicaoNanos = System.nanoTime() - tEvento;
+                    long restante = tEvento + pausaSegundos * 1_000_000_000L - System.nanoTime();
+                    if (restante > 0) Thread.sleep(restante / 1_000_000);
+                    tRestart = System.nanoTime();
+                    sinal(processo, "CONT");
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Cenário desconhecido: " + cenario);
+            }
+
+            CatchUp catchUp = aguardarCatchUp(escritor.confirmadasEntre(tEvento, tRestart),
+                    cluster.portaDaReplica(alvo), tRestart, Duration.ofSeconds(catchUpSegundos));
+            Thread.sleep(2000);
+
+            escritor.parar();
+            t.join();
+            Thread.sleep(1000); // deixa a replicação em andamento terminar
+
+            String liderFinal = aguardarLider(null, Duration.ofSeconds(10));
+            return relatorio(cenario, cluster, escritor, tEvento, liderInicial, novoLider,
+                    eleicaoNanos, catchUp, liderFinal, alvo);
+        }
+    }
+
+    private static String relatorio(String cenario, Cluster cluster, EscritorContinuo escritor,
+                                    long tEvento, String liderInicial, String novoLider,
+                                    long eleicaoNanos, CatchUp catchUp, String liderFinal, int alvo) {
+        List<EscritorContinuo.Tentativa> tentativas = escritor.getTentativas();
+        long primeiraFalha = -1, ultimaFalha = -1;
+        int s502 = 0, s503 = 0, outros = 0;
+        for (EscritorContinuo.Tentativa tt : tentativas) {
+            if (tt.nanos < tEvento || tt.ok()) continue;
+            if (primeiraFalha < 0) primeiraFalha = tt.nanos;
+            ultimaFalha = tt.nanos;
+            if (tt.status == 502) s502++;
+            else if (tt.status == 503) s503++;
+            else outros++;
+        }
+
+        // Confere todas as escritas confirmadas direto em cada réplica
+        Map<String, String> confirmadas = escritor.getConfirmadas();
+        int perdidasNoLider = 0;
+        int divergentes = 0;
+        int[] faltandoPorReplica = new int[replicas];
+        for (Map.Entry<String, String> e : confirmadas.entrySet()) {
+            String valorLider = null;
+            boolean diverge = false;
+            String primeiro = null;
+            for (int i = 0; i < replicas; i++) {
+                String v = getDireto(cluster.portaDaReplica(i), e.getKey());
+                if (v == null) faltandoPorReplica[i]++;
+                if (cluster.idDaReplica(i).equals(liderFinal)) valorLider = v;
+                if (i == 0) primeiro = v;
+                else if (v == null ? primeiro != null : !v.equals(primeiro)) diverge = true;
+            }
+            if (!e.getValue().equals(valorLider)) perdidasNoLider++;
+            if (diverge) divergentes++;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("===== CENÁRIO ").append(cenario.toUpperCase()).append(" =====\n");
+        sb.append("Líder inicial: ").append(liderInicial)
+          .append(" | nó afetado: ").append(cluster.idDaReplica(alvo))
+          .append(" | líder final: ").append(liderFinal).append('\n');
+        if (eleicaoNanos >= 0) {
+            sb.append(String.format("Eleição de novo líder (%s): %.2f s%n", novoLider, eleicaoNanos / 1e9));
+        } else {
+            sb.append("Eleição de novo líder: não se aplica\n");
+        }
+        if (primeiraFalha < 0) {
+            sb.append("Janela de indisponibilidade de SET: nenhuma falha\n");
+        } else {
+            sb.append(String.format("Janela de indisponibilidade de SET: %.2f s "
+                            + "(começou %.2f s após o evento; 502=%d, 503=%d, timeout/outros=%d)%n",
+                    (ultimaFalha - primeiraFalha) / 1e9, (primeiraFalha - tEvento) / 1e9, s502, s503, outros));
+        }
+        sb.append("Escritas confirmadas: ").append(confirmadas.size())
+          .append(" | perdidas no líder final: ").append(perdidasNoLider)
+          .append(" | divergentes entre réplicas: ").append(divergentes).append('\n');
+        for (int i = 0; i < replicas; i++) {
+            sb.append("  ").append(cluster.idDaReplica(i)).append(" sem ")
+              .append(faltandoPorReplica[i]).append(" escritas confirmadas\n");
+        }
+        if (catchUp.nanos >= 0) {
+            sb.append(String.format("Catch-up do nó %s: %.2f s até servir as %d escritas confirmadas "
+                            + "enquanto estava fora%n",
+                    cluster.idDaReplica(alvo), catchUp.nanos / 1e9, catchUp.total));
+        } else {
+            sb.append(String.format("Catch-up do nó %s: não recuperou em %d s; das %d escritas confirmadas "
+                            + "enquanto estava fora, %d perdidas e %d divergentes nele%n",
+                    cluster.idDaReplica(alvo), catchUpSegundos, catchUp.total,
+                    catchUp.perdidas, catchUp.divergentes));
+        }
+        return sb.toString();
+    }
+
+    /** Resultado do catch-up: tempo desde o restart (-1 se não alcançou) e o que faltou. */
+    private static final class CatchUp {
+        final long nanos;
+        final int total;
+        final int perdidas;
+        final int divergentes;
+
+        CatchUp(long nanos, int total, int perdidas, int divergentes) {
+            this.nanos = nanos;
+            this.total = total;
+            this.perdidas = perdidas;
+            this.divergentes = divergentes;
+        }
+    }
+
+    /**
+     * Espera o nó servir, com o valor certo, cada escrita confirmada enquanto
+     * ele estava fora, a partir da mais antiga. A mais nova não basta: ela
+     * chega pelo fan-out normal logo depois do restart, com ou sem catch-up.
+     */
+    private static CatchUp aguardarCatchUp(List<EscritorContinuo.Tentativa> perdidas, int porta,
+                                           long tRestart, Duration limite) throws InterruptedException {
+        long fim = tRestart + limite.toNanos();
+        int proxima = 0;
+        while (System.nanoTime() < fim) {
+            while (proxima < perdidas.size()
+                    && perdidas.get(proxima).valor().equals(getDireto(porta, perdidas.get(proxima).chave()))) {
+                proxima++;
+            }
+            if (proxima == perdidas.size()) {
+                return new CatchUp(System.nanoTime() - tRestart, perdidas.size(), 0, 0);
+            }
+            Thread.sleep(100);
+        }
+
+        int ausentes = 0;
+        int divergentes = 0;
+        for (int i = proxima; i < perdidas.size(); i++) {
+            EscritorContinuo.Tentativa t = perdidas.get(i);
+            String v = getDireto(porta, t.chave());
+            if (v == null) ausentes++;
+            else if (!v.equals(t.valor())) divergentes++;
+        }
+        return new CatchUp(-1, perdidas.size(), ausentes, divergentes);
+    }
+
+    /** Espera haver um líder ativo diferente de 'anterior' (ou qualquer um, se null). */
+    private static String aguardarLider(String anterior, Duration limite) throws InterruptedException {
+        long fim = System.nanoTime() + limite.toNanos();
+        while (System.nanoTime() < fim) {
+            String lider = liderAtual();
+            if (lider != null && !lider.equals(anterior)) {
+                return lider;
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Nenhum líder novo em " + limite.toSeconds() + " s");
+    }
+
+    /** Lê o /status (JSON) do Gateway e devolve o id do líder ativo, ou null. */
+    static String liderAtual() {
+        String status = getUrl(GATEWAY + "/status");
+        if (status == null) return null;
+
+        String marca = "\"leader\":\"";
+        int i = status.indexOf(marca);
+        if (i < 0) return null; // "leader":null
+        String id = status.substring(i + marca.length(), status.indexOf('"', i + marca.length()));
+
+        // o objeto do nó termina no primeiro '}' (não há objetos aninhados nele)
+        int no = status.indexOf("{\"id\":\"" + id + "\"");
+        if (no < 0) return null;
+        String objeto = status.substring(no, status.indexOf('}', no));
+        return objeto.contains("\"role\":\"LEADER\"") && objeto.contains("\"active\":true") ? id : null;
+    }
+
+    private static String getDireto(int porta, String key) {
+        return getUrl("http://localhost:" + porta + "/get?key=" + key);
+    }
+
+    private static String getUrl(String url) {
+        try {
+            HttpResponse<String> resp = http.send(
+                    HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(2)).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            return resp.statusCode() == 200 ? resp.body() : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static int indiceDe(String id) {
+        return Integer.parseInt(id.substring(1));
+    }
+
+    private static int indiceDeOutro(String lider) {
+        return indiceDe(lider) == replicas - 1 ? 0 : replicas - 1;
+    }
+
+    private static void sinal(Process p, String sinal) throws Exception {
+        new ProcessBuilder("kill", "-" + sinal, Long.toString(p.pid()))
+                .inheritIO()
+                .start()
+                .waitFor();
+    }
+}
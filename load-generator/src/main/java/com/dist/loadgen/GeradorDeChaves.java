@@ -0,0 +1,77 @@
+package com.dist.loadgen;
+
+import java.util.SplittableRandom;
+
+/**
+ * Distribuição das chaves usadas pela carga.
+ */
+public interface GeradorDeChaves {
+
+    /** Próximo número de chave em [0, total). */
+    long proxima(SplittableRandom rnd);
+
+    static GeradorDeChaves criar(String nome, long total, double theta) {
+        switch (nome.toLowerCase()) {
+            case "uniforme":
+            case "uniform":
+                return new Uniforme(total);
+            case "zipf":
+            case "zipfian":
+                return new Zipfian(total, theta);
+            default:
+                throw new IllegalArgumentException("Distribuição desconhecida: " + nome);
+        }
+    }
+
+    class Uniforme implements GeradorDeChaves {
+        private final long total;
+
+        Uniforme(long total) {
+            this.total = total;
+        }
+
+        @Override
+        public long proxima(SplittableRandom rnd) {
+            return rnd.nextLong(total);
+        }
+    }
+
+    /**
+     * Zipfian (algoritmo de Gray et al., o mesmo do YCSB).
+     * A chave 0 é a mais quente; theta=0.99 é o padrão do YCSB.
+     */
+    class Zipfian implements GeradorDeChaves {
+        private final long total;
+        private final double theta;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+
+        Zipfian(long total, double theta) {
+            this.total = total;
+            this.theta = theta;
+            this.alpha = 1.0 / (1.0 - theta);
+            this.zetan = zeta(total, theta);
+            double zeta2 = zeta(2, theta);
+            this.eta = (1 - Math.pow(2.0 / total, 1 - theta)) / (1 - zeta2 / zetan);
+        }
+
+        private static double zeta(long n, double theta) {
+            double soma = 0;
+            for (long i = 1; i <= n; i++) {
+                soma += 1 / Math.pow(i, theta);
+            }
+            return soma;
+        }
+
+        @Override
+        public long proxima(SplittableRandom rnd) {
+            double u = rnd.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1.0) return 0;
+            if (uz < 1.0 + Math.pow(0.5, theta)) return 1;
+            long v = (long) (total * Math.pow(eta * u - eta + 1, alpha));
+            return Math.min(v, total - 1);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.dist.loadgen;
+
+import com.dist.gateway.LatencyHistogram;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Gerador de carga do cluster.
+ *
+ * Argumentos (todos opcionais):
+ *   --cluster=nenhum|processos|emprocesso  sobe Gateway + réplicas locais (padrão: nenhum)
+ *   --replicas=3                           réplicas a subir (portas 5000, 5001, ...)
+ *   --modo=fechado|aberto                  laço fechado ou taxa de chegada fixa
+ *   --protocolo=http|tcp|udp
+ *   --host=localhost                       host do Gateway
+ *   --gateways=h1[:porta],h2[:porta]       vários Gateways; as conexões se
+ *                                          dividem entre eles (porta do protocolo)
+ *   --clientes=16                          threads / conexões
+ *   --taxa=0                               ops/s total (obrigatório no laço aberto)
+ *   --duracao=30 --aquecimento=5           em segundos
+ *   --leituras=0.9                         fração de GETs (o resto é SET)
+ *   --chaves=10000 --distribuicao=uniforme|zipf --zipfTheta=0.99
+ *   --tamanhoValor=16
+ *   --preencher                            grava todas as chaves antes de medir
+ */
+public class LoadGeneratorApplication {
+
+    public static void main(String[] args) throws Exception {
+        Carga.Config config = new Carga.Config();
+        String cluster = "nenhum";
+        int replicas = 3;
+        boolean preencher = false;
+
+        for (String arg : args) {
+            if (arg.startsWith("--cluster=")) {
+                cluster = valor(arg);
+            } else if (arg.startsWith("--replicas=")) {
+                replicas = Integer.parseInt(valor(arg));
+            } else if (arg.startsWith("--modo=")) {
+                config.modo = valor(arg).equalsIgnoreCase("aberto") ? Carga.Modo.ABERTO : Carga.Modo.FECHADO;
+            } else if (arg.startsWith("--protocolo=")) {
+                config.protocolo = valor(arg);
+            } else if (arg.startsWith("--host=")) {
+                config.gateways = new String[]{valor(arg)};
+            } else if (arg.startsWith("--gateways=")) {
+                config.gateways = valor(arg).split(",");
+            } else if (arg.startsWith("--clientes=")) {
+                config.clientes = Integer.parseInt(valor(arg));
+            } else if (arg.startsWith("--taxa=")) {
+                config.taxa = Double.parseDouble(valor(arg));
+            } else if (arg.startsWith("--duracao=")) {
+                config.duracao = Duration.ofSeconds(Long.parseLong(valor(arg)));
+            } else if (arg.startsWith("--aquecimento=")) {
+                config.aquecimento = Duration.ofSeconds(Long.parseLong(valor(arg)));
+            } else if (arg.startsWith("--timeoutMs=")) {
+                config.timeout = Duration.ofMillis(Long.parseLong(valor(arg)));
+            } else if (arg.startsWith("--leituras=")) {
+                config.fracaoLeituras = Double.parseDouble(valor(arg));
+            } else if (arg.startsWith("--chaves=")) {
+                config.chaves = Long.parseLong(valor(arg));
+            } else if (arg.startsWith("--distribuicao=")) {
+                config.distribuicao = valor(arg);
+            } else if (arg.startsWith("--zipfTheta=")) {
+                config.zipfTheta = Double.parseDouble(valor(arg));
+            } else if (arg.startsWith("--tamanhoValor=")) {
+                config.tamanhoValor = Integer.parseInt(valor(arg));
+            } else if (arg.equals("--preencher")) {
+                preencher = true;
+            } else {
+                System.out.println("[LoadGen] Argumento desconhecido: " + arg);
+                System.exit(2);
+            }
+        }
+
+        Cluster clusterLocal = null;
+        if (!cluster.equalsIgnoreCase("nenhum")) {
+            Cluster.Modo modo = cluster.equalsIgnoreCase("emprocesso")
+                    ? Cluster.Modo.EM_PROCESSO
+                    : Cluster.Modo.PROCESSOS;
+            Path logs = Files.createTempDirectory("dist-loadgen");
+            clusterLocal = new Cluster(modo, 5000, logs);
+            System.out.println("[LoadGen] Logs do cluster em " + logs);
+        }
+
+        try {
+            if (clusterLocal != null) {
+                clusterLocal.iniciar(replicas);
+            }
+            Carga carga = new Carga(config);
+            if (preencher) {
+                System.out.println("[LoadGen] Preenchendo " + config.chaves + " chaves...");
+                carga.preencher();
+            }
+            System.out.println("[LoadGen] Carga: modo=" + config.modo + " protocolo=" + config.protocolo
+                    + " clientes=" + config.clientes + " taxa=" + config.taxa
+                    + " leituras=" + config.fracaoLeituras + " distribuicao=" + config.distribuicao
+                    + " duracao=" + config.duracao.toSeconds() + "s");
+            Carga.Resultado r = carga.executar();
+            imprimirRelatorio(config, r);
+        } finally {
+            if (clusterLocal != null) {
+                clusterLocal.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void imprimirRelatorio(Carga.Config config, Carga.Resultado r) {
+        double segundos = r.duracaoMedidaNanos / 1e9;
+        long total = r.ok.get() + r.erros.get();
+
+        System.out.println();
+        System.out.println("===== RESULTADO =====");
+        System.out.printf("Operações: %d (ok=%d, erros=%d)%n", total, r.ok.get(), r.erros.get());
+        System.out.printf("Vazão: %.1f ops/s (ok: %.1f ops/s)%n", total / segundos, r.ok.get() / segundos);
+        if (config.modo == Carga.Modo.FECHADO && config.taxa <= 0) {
+            System.out.println("Obs: laço fechado sem --taxa não tem cronograma; "
+                    + "latência corrigida = tempo de serviço.");
+        }
+        System.out.println();
+        System.out.printf("%-22s %9s %9s %9s %9s %9s %9s%n",
+                "latência (ms)", "p50", "p90", "p99", "p99.9", "p99.99", "max");
+        linha("corrigida", r.corrigida);
+        linha("  leituras", r.leituras);
+        linha("  escritas", r.escritas);
+        linha("tempo de serviço", r.servico);
+    }
+
+    private static void linha(String nome, LatencyHistogram h) {
+        System.out.printf("%-22s %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n", nome,
+                ms(h.percentileMicros(0.50)), ms(h.percentileMicros(0.90)),
+                ms(h.percentileMicros(0.99)), ms(h.percentileMicros(0.999)),
+                ms(h.percentileMicros(0.9999)), ms(h.getMaxMicros()));
+    }
+
+    private static double ms(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static String valor(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+}
@@ -0,0 +1,216 @@
+package com.dist.replica;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assinatura das mudanças do nó (change data capture): /subscribe?from=N
+ *
+ * A resposta é um stream chunked que não termina. Primeiro vêm as entradas
+ * do log com índice maior que N, depois cada entrada nova assim que é
+ * aplicada. Uma linha por entrada, no mesmo formato da query do /append:
+ *
+ *   index=7&key=user1&value=abc[&ttlMs=29500]
+ *
+ * ttlMs é o que faltava do prazo quando a linha saiu (0 se já venceu),
+ * para não depender do relógio do assinante bater com o do nó.
+ *
+ * Para retomar depois de uma queda basta pedir from=<último index recebido>.
+ * Se o trecho já foi compactado, o assinante recebe só a última versão de
+ * cada chave (o que sobrou no log), como em qualquer log compactado.
+ *
+ * Controle de fluxo: cada assinante tem a própria thread, que lê o log em
+ * lotes e escreve no socket. O log é o buffer: um consumidor lento só
+ * atrasa a própria thread (o write bloqueia quando a janela TCP enche) e
+ * nunca segura quem escreve no nó. Sem novidades, uma linha "# ping" sai
+ * a cada poucos segundos para descobrir clientes que foram embora.
+ */
+public class Assinaturas {
+
+    // Configurável pela linha de comando da réplica
+    static volatile int maxAssinantes = 64;
+
+    private static final int LOTE = 256;
+    private static final long PING_MS = 5000;
+
+    private static final Object NOVIDADES = new Object();
+    private static final AtomicInteger ativos = new AtomicInteger();
+    private static final AtomicLong aplicadas = new AtomicLong(); // só cresce: é o que os assinantes esperam mudar
+    private static Semaphore vagas;
+
+    static synchronized Semaphore vagas() {
+        if (vagas == null) {
+            vagas = new Semaphore(maxAssinantes);
+        }
+        return vagas;
+    }
+
+    /** Acorda os assinantes; chamado depois de cada entrada aplicada. */
+    static void avisar() {
+        aplicadas.incrementAndGet();
+        if (ativos.get() > 0) {
+            synchronized (NOVIDADES) {
+                NOVIDADES.notifyAll();
+            }
+        }
+    }
+
+    static int getAtivos() {
+        return ativos.get();
+    }
+
+    // Posição da primeira entrada com índice maior que o informado (o log está em ordem de índice)
+    private static int primeiraDepoisDe(List<ReplicaNodeApplication.LogEntry> log, long indice) {
+        int lo = 0;
+        int hi = log.size();
+        while (lo < hi) {
+            int meio = (lo + hi) >>> 1;
+            if (log.get(meio).index <= indice) {
+                lo = meio + 1;
+            } else {
+                hi = meio;
+            }
+        }
+        return lo;
+    }
+
+    private static int copiarLote(long depoisDe, ReplicaNodeApplication.LogEntry[] lote) {
+        List<ReplicaNodeApplication.LogEntry> log = ReplicaNodeApplication.LOG;
+        synchronized (log) {
+            int pos = primeiraDepoisDe(log, depoisDe);
+            int n = 0;
+            while (n < lote.length && pos + n < log.size()) {
+                lote[n] = log.get(pos + n);
+                n++;
+            }
+            return n;
+        }
+    }
+
+    private static void escrever(Writer out, ReplicaNodeApplication.LogEntry e) throws IOException {
+        out.write("index=");
+        out.write(Integer.toString(e.index));
+        out.write("&key=");
+        out.write(URLEncoder.encode(e.key, StandardCharsets.UTF_8));
+        out.write("&value=");
+        out.write(URLEncoder.encode(e.value, StandardCharsets.UTF_8));
+        if (e.expiraEm > 0) {
+            out.write("&ttlMs=");
+            out.write(Long.toString(e.ttlRestanteMs()));
+        }
+        out.write('\n');
+    }
+
+    private static void transmitir(HttpExchange exchange, long desde, String nodeId) {
+        long ultimo = desde;
+        ReplicaNodeApplication.LogEntry[] lote = new ReplicaNodeApplication.LogEntry[LOTE];
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 16 * 1024)) {
+            long ultimaEscrita = System.currentTimeMillis();
+            while (true) {
+                long visto = aplicadas.get();
+                int n = copiarLote(ultimo, lote);
+                for (int i = 0; i < n; i++) {
+                    escrever(out, lote[i]);
+                    ultimo = lote[i].index;
+                    lote[i] = null;
+                }
+                if (n == LOTE) {
+                    continue; // ainda atrás: segue lendo sem esperar
+                }
+                out.flush();
+                if (n > 0) {
+                    ultimaEscrita = System.currentTimeMillis();
+                }
+
+                synchronized (NOVIDADES) {
+                    if (aplicadas.get() == visto) {
+                        NOVIDADES.wait(PING_MS);
+                    }
+                }
+                if (System.currentTimeMillis() - ultimaEscrita >= PING_MS) {
+                    out.write("# ping\n");
+                    out.flush();
+                    ultimaEscrita = System.currentTimeMillis();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println("[Nó " + nodeId + "] Assinante desconectado (último index=" + ultimo + ")");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Handler para /subscribe?from=N
+    static class SubscribeHandler implements HttpHandler {
+        private final String nodeId;
+
+        SubscribeHandler(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String query = exchange.getRequestURI().getRawQuery();
+            Map<String, String> params = query == null
+                    ? Map.of() : ReplicaNodeApplication.QueryUtils.parseQuery(query);
+            long desde;
+            try {
+                desde = Long.parseLong(params.getOrDefault("from", "0"));
+            } catch (NumberFormatException e) {
+                responder(exchange, 400, "Índice inválido: " + params.get("from"));
+                return;
+            }
+
+            Semaphore vagas = vagas();
+            if (!vagas.tryAcquire()) {
+                exchange.getResponseHeaders().set("Retry-After", "5");
+                responder(exchange, 503, "Limite de assinantes atingido");
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0); // chunked, sem fim
+            System.out.println("[Nó " + nodeId + "] Novo assinante a partir do index " + desde);
+
+            // o stream não prende uma thread da faixa de controle: segue em outra
+            Thread t = new Thread(() -> {
+                ativos.incrementAndGet();
+                try {
+                    transmitir(exchange, desde, nodeId);
+                } finally {
+                    ativos.decrementAndGet();
+                    vagas.release();
+                }
+            }, "assinante-" + desde);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        private static void responder(HttpExchange exchange, int status, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (java.io.OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+
+    private Assinaturas() {
+    }
+}
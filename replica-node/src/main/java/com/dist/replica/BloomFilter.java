@@ -0,0 +1,121 @@
+package com.dist.replica;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Bloom filter das chaves do nó, para o Gateway responder "não existe"
+ * sem vir até aqui.
+ *
+ * Cada chave nova aplicada no estado (applyEntry) liga seus bits e tem o
+ * hash anotado num diário circular, numerado por versão. O Gateway busca
+ * /bloom?desde=V:
+ *  - se as versões depois de V ainda estão no diário, recebe só os hashes
+ *    novos (delta)
+ *  - senão (V=0, ou ficou muito para trás), recebe o filtro inteiro
+ *
+ * Formato binário (big-endian): tipo ('F' ou 'D'), versão atual (long),
+ * quantidade (int) e então as palavras do filtro ou os hashes.
+ *
+ * Tamanho e hash têm de bater com o BloomFilter do Gateway.
+ */
+public class BloomFilter {
+
+    static final int BITS = 1 << 23;         // 1 MiB: ~1% de falso positivo com 1 milhão de chaves
+    static final int HASHES = 6;
+    private static final int DIARIO = 1 << 16;
+
+    private final long[] palavras = new long[BITS / 64];
+    private final long[] diario = new long[DIARIO];
+    private long versao;
+
+    /** Liga os bits da chave e anota o hash no diário. */
+    public synchronized void adicionar(String chave) {
+        long h = hash(chave);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & (BITS - 1);
+            palavras[bit >>> 6] |= 1L << bit;
+        }
+        versao++;
+        diario[(int) (versao & (DIARIO - 1))] = h;
+    }
+
+    public synchronized long getVersao() {
+        return versao;
+    }
+
+    /** Delta desde a versão informada, ou o filtro inteiro se o diário já não cobre. */
+    public synchronized byte[] desde(long versaoCliente) throws IOException {
+        long novas = versao - versaoCliente;
+        boolean completo = versaoCliente <= 0 || novas < 0 || novas > DIARIO;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                completo ? palavras.length * 8 + 16 : (int) novas * 8 + 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (completo) {
+            out.writeByte('F');
+            out.writeLong(versao);
+            out.writeInt(palavras.length);
+            for (long p : palavras) {
+                out.writeLong(p);
+            }
+        } else {
+            out.writeByte('D');
+            out.writeLong(versao);
+            out.writeInt((int) novas);
+            for (long v = versaoCliente + 1; v <= versao; v++) {
+                out.writeLong(diario[(int) (v & (DIARIO - 1))]);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // FNV-1a de 64 bits sobre os chars da chave, com o finalizador do splitmix64
+    static long hash(String chave) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < chave.length(); i++) {
+            h ^= chave.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    // Handler para /bloom?desde=V
+    static class BloomHandler implements HttpHandler {
+        private final BloomFilter filtro;
+
+        BloomHandler(BloomFilter filtro) {
+            this.filtro = filtro;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long desde = 0;
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null && query.startsWith("desde=")) {
+                try {
+                    desde = Long.parseLong(query.substring("desde=".length()));
+                } catch (NumberFormatException e) {
+                    desde = 0;
+                }
+            }
+
+            byte[] bytes = filtro.desde(desde);
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+}
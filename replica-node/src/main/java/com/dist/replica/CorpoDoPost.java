@@ -0,0 +1,74 @@
+package com.dist.replica;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Corpo de um POST (o valor de /set e /append), lido inteiro num buffer
+ * por thread e limitado a MAX_VALOR_BYTES.
+ *
+ * O buffer cresce conforme o corpo, mas acima de BUFFER_RETIDO_MAX é usado
+ * só naquele pedido e não fica com a thread: um valor de 64 MiB não deixa
+ * 64 MiB presos por thread, fora do orçamento do modo cache. Por isso os
+ * bytes só valem até a próxima leitura na mesma thread.
+ */
+final class CorpoDoPost {
+
+    static final int MAX_VALOR_BYTES = 64 * 1024 * 1024;
+
+    private static final int BUFFER_RETIDO_MAX = 1024 * 1024;
+    private static final ThreadLocal<byte[]> BUFFER =
+            ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
+    final byte[] bytes;
+    final int tamanho;
+
+    private CorpoDoPost(byte[] bytes, int tamanho) {
+        this.bytes = bytes;
+        this.tamanho = tamanho;
+    }
+
+    /** Lê o corpo inteiro; null se passar de MAX_VALOR_BYTES. */
+    static CorpoDoPost ler(InputStream corpo) throws IOException {
+        byte[] buf = BUFFER.get();
+        int n = 0;
+        try (InputStream in = corpo) {
+            int lidos;
+            while ((lidos = in.read(buf, n, buf.length - n)) >= 0) {
+                n += lidos;
+                if (n == buf.length) {
+                    if (buf.length >= MAX_VALOR_BYTES) {
+                        // exatamente no limite ainda vale: só recusa se vier mais um byte
+                        if (in.read() >= 0) {
+                            return null;
+                        }
+                        break;
+                    }
+                    buf = Arrays.copyOf(buf, Math.min(MAX_VALOR_BYTES, buf.length * 2));
+                }
+            }
+        }
+        if (buf.length <= BUFFER_RETIDO_MAX) {
+            BUFFER.set(buf);
+        }
+        return new CorpoDoPost(buf, n);
+    }
+
+    /**
+     * O valor como String. Os valores são guardados como texto, então um
+     * corpo que não é UTF-8 válido é recusado (CharacterCodingException) em
+     * vez de virar U+FFFD no líder e em todos os followers.
+     */
+    String comoUtf8() throws CharacterCodingException {
+        return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(bytes, 0, tamanho))
+                .toString();
+    }
+}
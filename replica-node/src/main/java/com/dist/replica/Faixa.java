@@ -0,0 +1,110 @@
+package com.dist.replica;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Faixa de execução do HTTP do nó: um pool próprio, com limite de threads
+ * e de fila, para um grupo de endpoints.
+ *
+ * Antes todos os pedidos passavam pela única thread do HttpServer, e uma
+ * rajada de GETs deixava o /append da replicação esperando na mesma fila.
+ * Agora leitura, escrita, replicação e controle têm cada uma a sua. As
+ * faixas de escrita e de replicação têm uma thread só, para que as
+ * entradas sejam geradas e aplicadas na ordem em que chegam.
+ */
+public class Faixa {
+
+    private static final byte[] CHEIA = "Nó sobrecarregado, tente novamente.".getBytes(StandardCharsets.UTF_8);
+
+    private static final List<Faixa> TODAS = new CopyOnWriteArrayList<>();
+
+    final String nome;
+    private final String nodeId;
+    private final ThreadPoolExecutor executor;
+    final LongAdder recusadas = new LongAdder();
+
+    Faixa(String nodeId, String nome, int threads, int fila) {
+        this.nodeId = nodeId;
+        this.nome = nome;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(fila),
+                r -> new Thread(r, "faixa-" + nome + "-" + seq.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        TODAS.add(this);
+    }
+
+    /** Handler que roda o original nesta faixa. */
+    HttpHandler envolver(HttpHandler handler) {
+        return exchange -> {
+            try {
+                executor.execute(() -> executar(handler, exchange));
+            } catch (RejectedExecutionException e) {
+                recusadas.increment();
+                recusar(exchange);
+            }
+        };
+    }
+
+    private void executar(HttpHandler handler, HttpExchange exchange) {
+        try {
+            handler.handle(exchange);
+        } catch (Exception e) {
+            System.out.println("[Nó " + nodeId + "] Erro na faixa " + nome + ": " + e.getMessage());
+            exchange.close();
+        }
+    }
+
+    private static void recusar(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, CHEIA.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(CHEIA);
+        }
+    }
+
+    /** Soma das filas de todas as faixas (vai no heartbeat). */
+    static int pedidosNaFila() {
+        int total = 0;
+        for (Faixa f : TODAS) {
+            total += f.executor.getQueue().size();
+        }
+        return total;
+    }
+
+    static void writePrometheus(StringBuilder sb, String nodeId) {
+        List<Faixa> faixas = TODAS;
+        sb.append("# HELP replica_lane_active Threads ocupadas por faixa de execução\n");
+        sb.append("# TYPE replica_lane_active gauge\n");
+        for (Faixa f : faixas) {
+            sb.append("replica_lane_active{node=\"").append(nodeId).append("\",lane=\"").append(f.nome).append("\"} ")
+              .append(f.executor.getActiveCount()).append('\n');
+        }
+        sb.append("# HELP replica_lane_queued Pedidos esperando na fila da faixa\n");
+        sb.append("# TYPE replica_lane_queued gauge\n");
+        for (Faixa f : faixas) {
+            sb.append("replica_lane_queued{node=\"").append(nodeId).append("\",lane=\"").append(f.nome).append("\"} ")
+              .append(f.executor.getQueue().size()).append('\n');
+        }
+        sb.append("# HELP replica_lane_rejected_total Pedidos recusados com a faixa cheia\n");
+        sb.append("# TYPE replica_lane_rejected_total counter\n");
+        for (Faixa f : faixas) {
+            sb.append("replica_lane_rejected_total{node=\"").append(nodeId).append("\",lane=\"").append(f.nome).append("\"} ")
+              .append(f.recusadas.sum()).append('\n');
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.dist.replica;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Heartbeat binário do nó para o Gateway (UDP), em big-endian:
+ *
+ *   byte   tipo (0x01; as mensagens de texto começam por letra)
+ *   byte   versão (3)
+ *   short  tamanho do id, seguido do id em UTF-8
+ *   short  tamanho do host, seguido do host em UTF-8
+ *   int    porta HTTP do nó
+ *   long   último índice do log
+ *   long   lastAppliedIndex
+ *   int    pedidos esperando nas filas das faixas
+ *   int    p99 do GET desde o heartbeat anterior (us)
+ *   long   heap usado (bytes)
+ *   long   heap máximo (bytes)
+ *   byte   1 se o nó é líder na época abaixo, 0 se não
+ *   long   maior época de líder vista pelo nó (-1: nenhuma)
+ *
+ * Com isso o Gateway mostra o atraso de replicação e a carga de cada nó
+ * no /status, antes que um nó lento apareça na latência dos clientes. Com
+ * host e porta, um Gateway reiniciado registra o nó pelo heartbeat, sem
+ * esperar um REGISTER (que o nó só manda ao subir). Com o papel e a época,
+ * um Gateway reiniciado sem arquivo mantém o líder que já estava escrevendo.
+ */
+final class Heartbeat {
+
+    static final byte TIPO = 0x01;
+    static final byte VERSAO = 3;
+
+    private static final MemoryMXBean MEMORIA = ManagementFactory.getMemoryMXBean();
+
+    private final byte[] id;
+    private final byte[] host;
+    private final int porta;
+    private final ByteBuffer buffer;
+
+    Heartbeat(String nodeId, String host, int porta) {
+        this.id = nodeId.getBytes(StandardCharsets.UTF_8);
+        this.host = host.getBytes(StandardCharsets.UTF_8);
+        this.porta = porta;
+        this.buffer = ByteBuffer.allocate(2 + 2 + id.length + 2 + this.host.length + 4 + 8 + 8 + 4 + 4 + 8 + 8 + 1 + 8);
+    }
+
+    /** Monta o próximo heartbeat; o array devolvido é reaproveitado a cada chamada. */
+    byte[] codificar() {
+        MemoryUsage heap = MEMORIA.getHeapMemoryUsage();
+        long p99 = Metrics.GET.percentilRecenteMicros(0.99);
+
+        buffer.clear();
+        buffer.put(TIPO).put(VERSAO);
+        buffer.putShort((short) id.length).put(id);
+        buffer.putShort((short) host.length).put(host);
+        buffer.putInt(porta);
+        buffer.putLong(Metrics.ULTIMO_INDICE.get());
+        buffer.putLong(ReplicaNodeApplication.getLastAppliedIndex());
+        buffer.putInt(Faixa.pedidosNaFila());
+        buffer.putInt((int) Math.min(Integer.MAX_VALUE, p99));
+        buffer.putLong(heap.getUsed());
+        buffer.putLong(heap.getMax());
+        buffer.put((byte) (ReplicaNodeApplication.isLider() ? 1 : 0));
+        buffer.putLong(ReplicaNodeApplication.getEpocaVista());
+        return buffer.array();
+    }
+}
@@ -0,0 +1,145 @@
+package com.dist.replica;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas do nó de réplica, expostas em /metrics no formato texto do Prometheus.
+ *
+ *  - histogramas de append no log, aplicação no estado, GET e replicação via Gateway
+ *  - contadores de erros, timeouts e chaves expiradas
+ *  - acertos/falhas de GET e, no modo cache, bytes usados e despejos
+ *  - gauges de tamanho do log, último índice, lastAppliedIndex, chaves com TTL e assinantes
+ */
+public class Metrics {
+
+    static final LatencyHistogram LOG_APPEND = new LatencyHistogram();
+    static final LatencyHistogram APPLY = new LatencyHistogram();
+    static final LatencyHistogram GET = new LatencyHistogram();
+    static final LatencyHistogram REPLICACAO = new LatencyHistogram();
+
+    static final LongAdder ERROS = new LongAdder();
+    static final LongAdder TIMEOUTS = new LongAdder();
+    static final LongAdder EXPIRADAS = new LongAdder();
+    static final LongAdder ACERTOS_CACHE = new LongAdder();
+    static final LongAdder FALHAS_CACHE = new LongAdder();
+
+    // Maior índice de log visto pelo nó (local ou recebido via /append)
+    static final AtomicLong ULTIMO_INDICE = new AtomicLong(0);
+
+    static void erro(Throwable causa) {
+        ERROS.increment();
+        if (causa instanceof HttpTimeoutException) {
+            TIMEOUTS.increment();
+        }
+    }
+
+    static String render(String nodeId) {
+        String labels = "node=\"" + nodeId + "\"";
+        StringBuilder sb = new StringBuilder(2048);
+
+        sb.append("# HELP replica_latency_seconds Latência das operações internas do nó\n");
+        sb.append("# TYPE replica_latency_seconds summary\n");
+        LOG_APPEND.writePrometheus(sb, "replica_latency_seconds", labels + ",op=\"log_append\"");
+        APPLY.writePrometheus(sb, "replica_latency_seconds", labels + ",op=\"apply\"");
+        GET.writePrometheus(sb, "replica_latency_seconds", labels + ",op=\"get\"");
+        REPLICACAO.writePrometheus(sb, "replica_latency_seconds", labels + ",op=\"replicate\"");
+
+        sb.append("# HELP replica_errors_total Erros no nó\n");
+        sb.append("# TYPE replica_errors_total counter\n");
+        sb.append("replica_errors_total{").append(labels).append("} ").append(ERROS.sum()).append('\n');
+
+        sb.append("# HELP replica_timeouts_total Timeouts em chamadas feitas pelo nó\n");
+        sb.append("# TYPE replica_timeouts_total counter\n");
+        sb.append("replica_timeouts_total{").append(labels).append("} ").append(TIMEOUTS.sum()).append('\n');
+
+        sb.append("# HELP replica_expired_keys_total Chaves removidas por TTL\n");
+        sb.append("# TYPE replica_expired_keys_total counter\n");
+        sb.append("replica_expired_keys_total{").append(labels).append("} ").append(EXPIRADAS.sum()).append('\n');
+
+        sb.append("# HELP replica_keys Chaves no estado do nó\n");
+        sb.append("# TYPE replica_keys gauge\n");
+        sb.append("replica_keys{").append(labels).append("} ")
+          .append(ReplicaNodeApplication.STATE.size()).append('\n');
+
+        sb.append("# HELP replica_keys_with_ttl Chaves com prazo de expiração pendente\n");
+        sb.append("# TYPE replica_keys_with_ttl gauge\n");
+        sb.append("replica_keys_with_ttl{").append(labels).append("} ")
+          .append(ReplicaNodeApplication.EXPIRA_EM.size()).append('\n');
+
+        long acertos = ACERTOS_CACHE.sum();
+        long falhas = FALHAS_CACHE.sum();
+        sb.append("# HELP replica_get_hits_total GETs que acharam a chave\n");
+        sb.append("# TYPE replica_get_hits_total counter\n");
+        sb.append("replica_get_hits_total{").append(labels).append("} ").append(acertos).append('\n');
+        sb.append("# HELP replica_get_misses_total GETs de chave inexistente, expirada ou despejada\n");
+        sb.append("# TYPE replica_get_misses_total counter\n");
+        sb.append("replica_get_misses_total{").append(labels).append("} ").append(falhas).append('\n');
+        sb.append("# HELP replica_hit_ratio Fração de GETs que acharam a chave desde o início\n");
+        sb.append("# TYPE replica_hit_ratio gauge\n");
+        sb.append("replica_hit_ratio{").append(labels).append("} ")
+          .append(acertos + falhas == 0 ? 0.0 : (double) acertos / (acertos + falhas)).append('\n');
+
+        WTinyLfu cache = ReplicaNodeApplication.CACHE;
+        if (cache != null) {
+            sb.append("# HELP replica_cache_bytes Memória estimada das chaves no modo cache\n");
+            sb.append("# TYPE replica_cache_bytes gauge\n");
+            sb.append("replica_cache_bytes{").append(labels).append("} ").append(cache.getBytesUsados()).append('\n');
+            sb.append("# HELP replica_cache_max_bytes Orçamento de memória do modo cache\n");
+            sb.append("# TYPE replica_cache_max_bytes gauge\n");
+            sb.append("replica_cache_max_bytes{").append(labels).append("} ").append(cache.getMaxBytes()).append('\n');
+            sb.append("# HELP replica_cache_evictions_total Chaves despejadas pelo W-TinyLFU\n");
+            sb.append("# TYPE replica_cache_evictions_total counter\n");
+            sb.append("replica_cache_evictions_total{").append(labels).append("} ").append(cache.getDespejos()).append('\n');
+        }
+
+        sb.append("# HELP replica_log_length Entradas no log local\n");
+        sb.append("# TYPE replica_log_length gauge\n");
+        sb.append("replica_log_length{").append(labels).append("} ")
+          .append(ReplicaNodeApplication.getTamanhoDoLog()).append('\n');
+
+        sb.append("# HELP replica_last_log_index Maior índice de log conhecido pelo nó\n");
+        sb.append("# TYPE replica_last_log_index gauge\n");
+        sb.append("replica_last_log_index{").append(labels).append("} ")
+          .append(ULTIMO_INDICE.get()).append('\n');
+
+        sb.append("# HELP replica_subscribers Assinantes conectados em /subscribe\n");
+        sb.append("# TYPE replica_subscribers gauge\n");
+        sb.append("replica_subscribers{").append(labels).append("} ")
+          .append(Assinaturas.getAtivos()).append('\n');
+        Faixa.writePrometheus(sb, nodeId);
+
+        sb.append("# HELP replica_last_applied_index Último índice aplicado ao estado\n");
+        sb.append("# TYPE replica_last_applied_index gauge\n");
+        sb.append("replica_last_applied_index{").append(labels).append("} ")
+          .append(ReplicaNodeApplication.getLastAppliedIndex()).append('\n');
+
+        return sb.toString();
+    }
+
+    // Handler para /metrics
+    static class MetricsHandler implements HttpHandler {
+        private final String nodeId;
+
+        MetricsHandler(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            byte[] bytes = render(nodeId).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+}
@@ -21,46 +21,135 @@ import java.net.http.HttpResponse;
 /**
  * Nó de réplica simples (por enquanto, 1 líder).
  * Funcionalidades:
- *  - Key-Value Store em memória (/set e /get)
- *  - Envia REGISTER para o Gateway via UDP
- *  - Envia HEARTBEAT periódico para o Gateway via UDP
+ *  - Key-Value Store em memória (/set e /get; /set também faz CAS, INCR e APPEND)
+ *  - valores grandes no corpo de um POST, também na replicação
+ *  - /scan ordenado por prefixo/intervalo, em páginas com cursor
+ *  - TTL por chave (/set?...&ttl=segundos), com o prazo gravado no log
+ *  - compactação do log: some com entradas sobrescritas, expiradas e despejadas
+ *  - modo cache (--maxMemoryBytes=): despeja chaves por W-TinyLFU acima do orçamento
+ *  - /subscribe?from=N: stream das entradas do log a partir de N e das novas
+ *  - faixas de execução separadas para leitura, escrita, replicação e controle
+ *  - Envia REGISTER para os Gateways (--gateways=) via UDP
+ *  - Envia HEARTBEAT binário periódico para o Gateway via UDP, com índices,
+ *    fila, p99 recente e uso de heap
  */
 public class ReplicaNodeApplication {
 
-    private static final Map<String, String> STATE = new ConcurrentHashMap<>();
+    static final Map<String, String> STATE = new ConcurrentHashMap<>();
+
+    // Chaves existentes, para o Gateway responder 404 sem chamar o nó
+    static final BloomFilter CHAVES = new BloomFilter();
+
+    // Prazo de expiração (epoch em ms) das chaves que têm TTL; as outras não aparecem aqui
+    static final Map<String, Long> EXPIRA_EM = new ConcurrentHashMap<>();
+
+    // Expiração ativa: remove a chave quando o prazo vence, mesmo sem ninguém ler
+    static final TimerWheel EXPIRACOES =
+            new TimerWheel(ReplicaNodeApplication::expirar, System.currentTimeMillis());
+
+    // Modo cache: política de despejo, ou null sem orçamento de memória (o padrão)
+    static volatile WTinyLfu CACHE;
+
+    // Acima deste tamanho o log é compactado (configurável por --compactarLogAcima=)
+    private static volatile int compactarLogAcima = 100_000;
+    private static volatile int tamanhoAposCompactar;
+
+    // Índice ordenado das chaves, para o /scan por prefixo e intervalo
+    static final java.util.concurrent.ConcurrentSkipListSet<String> INDICE =
+            new java.util.concurrent.ConcurrentSkipListSet<>();
 
     //  NOVO: log replicado em memória
-    private static final java.util.List<LogEntry> LOG =
+    static final java.util.List<LogEntry> LOG =
             java.util.Collections.synchronizedList(new java.util.ArrayList<>());
 
-    private static int lastAppliedIndex = 0;
+    private static volatile int lastAppliedIndex = 0;
+
+    // Serializa as escritas do líder (SET comum e CAS/INCR/APPEND)
+    private static final Object ESCRITA = new Object();
     private static final java.util.concurrent.atomic.AtomicInteger LOG_INDEX_SEQ =
             new java.util.concurrent.atomic.AtomicInteger(0);
 
+    // Maior época de líder vista num /set ou /append (-1: nenhuma) e o líder
+    // dela. Escrita de época menor vem de um Gateway que ainda não soube do
+    // líder novo; escrita da mesma época com outro líder vem de dois Gateways
+    // que elegeram ao mesmo tempo. As duas são recusadas. Só mudam com o
+    // lock de escrita
+    private static volatile long epocaVista = -1;
+    private static volatile String liderVisto;
+
     //  Identidade e papel do nó
     private static String NODE_ID = "A1";
     private static String ROLE = "LEADER";
 
-    //  Endereço HTTP do Gateway (para o líder mandar replicar)
-    private static final String GATEWAY_BASE_URL = "http://localhost:8080";
+    // Gateways do cluster (--gateways=host:portaHttp:portaUdp,...): heartbeat vai para
+    // todos; a replicação usa um só e passa para o próximo se ele não responder
+    private static volatile java.util.List<Gateway> GATEWAYS = Gateway.parse("localhost:8080:8000");
+    private static final java.util.concurrent.atomic.AtomicInteger GATEWAY_PREFERIDO =
+            new java.util.concurrent.atomic.AtomicInteger();
+
+    // Cliente único para a replicação: reaproveita a conexão keep-alive com o Gateway
+    private static final HttpClient GATEWAY_CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(java.time.Duration.ofSeconds(1))
+            .build();
+
+    // Um socket UDP para REGISTER e todos os heartbeats (os endereços são resolvidos uma vez)
+    private static DatagramSocket UDP;
+
+    /** Um Gateway: URL HTTP para a replicação e endereço UDP para REGISTER/HEARTBEAT. */
+    static final class Gateway {
+        final String baseUrl;
+        final InetSocketAddress udp;
+
+        Gateway(String host, int portaHttp, int portaUdp) {
+            this.baseUrl = "http://" + host + ":" + portaHttp;
+            this.udp = new InetSocketAddress(host, portaUdp);
+        }
 
-    private static final String GATEWAY_HOST = "localhost";
-    private static final int GATEWAY_UDP_PORT = 8000;
+        static java.util.List<Gateway> parse(String lista) {
+            java.util.List<Gateway> gateways = new java.util.ArrayList<>();
+            for (String g : lista.split(",")) {
+                String[] p = g.trim().split(":");
+                if (p.length != 3) {
+                    throw new IllegalArgumentException("Gateway inválido (use host:portaHttp:portaUdp): " + g);
+                }
+                gateways.add(new Gateway(p[0], Integer.parseInt(p[1]), Integer.parseInt(p[2])));
+            }
+            return java.util.List.copyOf(gateways);
+        }
 
-    // Entrada de log
+        @Override
+        public String toString() {
+            return baseUrl + " (udp " + udp.getPort() + ")";
+        }
+    }
+
+    // Entrada de log (expiraEm = 0: sem TTL; é um instante do relógio deste nó)
     static class LogEntry {
         final int index;
         final String key;
         final String value;
+        final long expiraEm;
 
         LogEntry(int index, String key, String value) {
+            this(index, key, value, 0);
+        }
+
+        LogEntry(int index, String key, String value, long expiraEm) {
             this.index = index;
             this.key = key;
             this.value = value;
+            this.expiraEm = expiraEm;
+        }
+
+        // O que falta do prazo, para mandar a outro relógio (0 se já venceu)
+        long ttlRestanteMs() {
+            return Math.max(0, expiraEm - System.currentTimeMillis());
         }
     }
     public static void main(String[] args) throws Exception {
         int port = 5000;
+        int threadsLeitura = 4;
         NODE_ID = "A1";
         ROLE = "LEADER";
 
@@ -71,22 +160,53 @@ public class ReplicaNodeApplication {
                 NODE_ID = arg.substring("--nodeId=".length());
             } else if (arg.startsWith("--role=")) {
                 ROLE = arg.substring("--role=".length());
+            } else if (arg.startsWith("--maxMemoryBytes=")) {
+                long max = Long.parseLong(arg.substring("--maxMemoryBytes=".length()));
+                CACHE = max > 0 ? new WTinyLfu(max) : null;
+            } else if (arg.startsWith("--maxAssinantes=")) {
+                Assinaturas.maxAssinantes = Integer.parseInt(arg.substring("--maxAssinantes=".length()));
+            } else if (arg.startsWith("--gateways=")) {
+                GATEWAYS = Gateway.parse(arg.substring("--gateways=".length()));
+            } else if (arg.startsWith("--threadsLeitura=")) {
+                threadsLeitura = Integer.parseInt(arg.substring("--threadsLeitura=".length()));
+            } else if (arg.startsWith("--compactarLogAcima=")) {
+                compactarLogAcima = Integer.parseInt(arg.substring("--compactarLogAcima=".length()));
             }
         }
 
         // Envia registro e inicia heartbeat
         sendRegister(NODE_ID, "localhost", port, ROLE);
-        startHeartbeatThread(NODE_ID);
+        startHeartbeatThread(NODE_ID, "localhost", port);
+        startExpiracaoThread();
 
+        // Sem TCP_NODELAY o HttpServer do JDK responde cabeçalho e corpo em
+        // segmentos separados e cada resposta numa conexão keep-alive espera
+        // o ACK atrasado do cliente (~40 ms)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
         HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
         System.out.println("[Nó " + NODE_ID + "] Servidor HTTP iniciado na porta " + port +
                 " (papel=" + ROLE + ")");
+        if (CACHE != null) {
+            System.out.println("[Nó " + NODE_ID + "] Modo cache: até " + CACHE.getMaxBytes() + " bytes");
+        }
 
-        server.createContext("/set", new SetHandler());
-        server.createContext("/get", new GetHandler());
+        // Uma faixa por tipo de tráfego: uma rajada de GETs enche só a de
+        // leitura, e o /append da replicação segue com thread e fila próprias.
+        // Escrita e replicação têm uma thread só para manter a ordem do log.
+        Faixa leitura = new Faixa(NODE_ID, "read", threadsLeitura, 1024);
+        Faixa escrita = new Faixa(NODE_ID, "write", 1, 1024);
+        Faixa replicacao = new Faixa(NODE_ID, "replication", 1, 4096);
+        Faixa controle = new Faixa(NODE_ID, "control", 2, 64);
 
-        //  NOVO: endpoint interno para replicação de log
-        server.createContext("/append", new AppendHandler());
+        server.createContext("/set", escrita.envolver(new SetHandler()));
+        server.createContext("/get", leitura.envolver(new GetHandler()));
+        server.createContext("/scan", leitura.envolver(new ScanHandler()));
+
+        // endpoint interno para replicação de log
+        server.createContext("/append", replicacao.envolver(new AppendHandler()));
+        server.createContext("/metrics", controle.envolver(new Metrics.MetricsHandler(NODE_ID)));
+        server.createContext("/bloom", controle.envolver(new BloomFilter.BloomHandler(CHAVES)));
+        server.createContext("/subscribe", controle.envolver(new Assinaturas.SubscribeHandler(NODE_ID)));
 
         server.setExecutor(null);
         server.start();
@@ -99,18 +219,18 @@ public class ReplicaNodeApplication {
         try {
             String msg = "REGISTER;" + id + ";" + ip + ";" + port + ";" + role;
             sendUdpMessage(msg);
-            System.out.println("[Nó " + id + "] REGISTER enviado para o Gateway: " + msg);
+            System.out.println("[Nó " + id + "] REGISTER enviado para " + GATEWAYS + ": " + msg);
         } catch (Exception e) {
             System.out.println("[Nó " + id + "] Erro ao enviar REGISTER: " + e.getMessage());
         }
     }
 
-    private static void startHeartbeatThread(String nodeId) {
+    private static void startHeartbeatThread(String nodeId, String ip, int port) {
+        Heartbeat heartbeat = new Heartbeat(nodeId, ip, port);
         Thread t = new Thread(() -> {
             while (true) {
                 try {
-                    String msg = "HEARTBEAT;" + nodeId;
-                    sendUdpMessage(msg);
+                    sendUdp(heartbeat.codificar());
                     // Descomente para ver cada heartbeat:
                     // System.out.println("[Nó " + nodeId + "] HEARTBEAT enviado");
                     Thread.sleep(2000);
@@ -129,19 +249,85 @@ public class ReplicaNodeApplication {
         t.start();
     }
 
+    // Avança a timer wheel a cada tick, aplica as leituras anotadas no modo cache e, de vez em quando, compacta o log
+    private static void startExpiracaoThread() {
+        Thread t = new Thread(() -> {
+            long proximaCompactacao = 0;
+            while (true) {
+                try {
+                    Thread.sleep(TimerWheel.TICK_MS);
+                    long agora = System.currentTimeMillis();
+                    EXPIRACOES.avancar(agora);
+                    WTinyLfu cache = CACHE;
+                    if (cache != null) {
+                        cache.manutencao();
+                    }
+                    if (agora >= proximaCompactacao) {
+                        proximaCompactacao = agora + 1000;
+                        // no modo cache o log também ocupa memória: compacta bem antes
+                        int limite = cache != null ? 1000 : compactarLogAcima;
+                        if (LOG.size() > Math.max(limite, 2 * tamanhoAposCompactar)) {
+                            compactarLog();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    System.out.println("[Nó " + NODE_ID + "] Erro na expiração: " + e.getMessage());
+                }
+            }
+        }, "expiracao");
+        t.setDaemon(true);
+        t.start();
+    }
+
     private static void sendUdpMessage(String msg) throws IOException {
-        byte[] data = msg.getBytes(StandardCharsets.UTF_8);
-        try (DatagramSocket socket = new DatagramSocket()) {
-            DatagramPacket packet = new DatagramPacket(
-                    data, data.length,
-                    InetAddress.getByName(GATEWAY_HOST),
-                    GATEWAY_UDP_PORT
-            );
-            socket.send(packet);
+        sendUdp(msg.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Para todos os Gateways; um que esteja fora não impede os outros de receber
+    private static synchronized void sendUdp(byte[] data) throws IOException {
+        if (UDP == null) {
+            UDP = new DatagramSocket();
+        }
+        IOException erro = null;
+        for (Gateway g : GATEWAYS) {
+            try {
+                UDP.send(new DatagramPacket(data, data.length, g.udp));
+            } catch (IOException e) {
+                erro = e;
+            }
+        }
+        if (erro != null) {
+            throw erro;
         }
     }
 
     // --------- HANDLERS HTTP ---------
+
+    /**
+     * /set?key=&value=                      grava o valor
+     * /set?op=cas&key=&expected=&value=     grava só se o valor atual for 'expected' (409 se não)
+     * /set?op=incr&key=[&delta=1]           soma delta a um valor inteiro (ausente conta como 0)
+     * /set?op=append&key=&value=            concatena ao valor atual
+     *
+     * Em POST, o valor (value, ou o novo valor do cas) vem cru no corpo, e
+     * a query fica só com a chave e as opções.
+     *
+     * Todas aceitam &ttl=segundos. Em set e cas, sem ttl a chave deixa de
+     * expirar (como um SET novo); incr e append mantêm o prazo que já havia.
+     *
+     * O Gateway manda também &epoch=N&leader=id, a época e o líder que ele
+     * conhece: se este nó já viu uma época maior (um /append do líder novo),
+     * ou a mesma época com outro líder, a escrita é recusada com 409 em vez
+     * de criar um segundo histórico.
+     *
+     * Qualquer que seja a operação, o log recebe uma única entrada com o
+     * valor resultante e o prazo de expiração, e é ela que vai para os
+     * followers. O prazo viaja como o tempo que falta (ttlMs), e cada nó o
+     * soma ao próprio relógio: relógios fora de sincronia não fazem a chave
+     * vencer antes ou depois em cada follower.
+     */
     static class SetHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
@@ -153,29 +339,233 @@ public class ReplicaNodeApplication {
             }
 
             Map<String, String> params = QueryUtils.parseQuery(query);
+            if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                try {
+                    params.put("value", lerValorDoCorpo(exchange));
+                } catch (OperacaoRecusada e) {
+                    send(exchange, e.status, e.getMessage());
+                    return;
+                }
+            }
+            String op = params.getOrDefault("op", "set");
             String key = params.get("key");
-            String value = params.get("value");
 
-            if (key == null || value == null) {
+            if (key == null || (params.get("value") == null && !op.equals("incr"))) {
                 send(exchange, 400, "Parâmetros 'key' ou 'value' ausentes");
                 return;
             }
 
-            System.out.println("[Nó " + NODE_ID + "] Recebeu SET key=" + key + " value=" + value);
+            System.out.println("[Nó " + NODE_ID + "] Recebeu " + op.toUpperCase() + " key=" + key
+                    + (params.containsKey("value") ? " value=" + resumo(params.get("value")) : ""));
+
+            LogEntry entry;
+            try {
+                entry = executarOperacao(op, key, params);
+            } catch (OperacaoRecusada e) {
+                send(exchange, e.status, e.getMessage());
+                return;
+            }
 
             try {
-                LogEntry entry = appendToLocalLog(key, value);
-                applyEntry(entry);
-                replicateEntryViaGateway(entry);
+                replicateEntryViaGateway(entry, params.get("epoch"), params.get("leader"));
 
-                send(exchange, 200, "OK (log index=" + entry.index + ")");
+                String body = "OK (log index=" + entry.index + ")";
+                if (op.equals("incr")) {
+                    body += " valor=" + entry.value;
+                }
+                send(exchange, 200, body);
             } catch (Exception e) {
+                Metrics.erro(e);
                 e.printStackTrace();
                 send(exchange, 500, "Erro ao processar SET com Log Replicado: " + e.getMessage());
             }
         }
     }
 
+    /** Operação de escrita recusada antes de chegar ao log (status HTTP para o cliente). */
+    static class OperacaoRecusada extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        OperacaoRecusada(int status, String mensagem) {
+            super(mensagem);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Lê o valor atual, calcula o novo e grava/aplica a entrada, tudo sob o
+     * mesmo lock de escrita, para que nenhum outro SET caia entre a leitura
+     * e a gravação.
+     */
+    static LogEntry executarOperacao(String op, String key, Map<String, String> params)
+            throws OperacaoRecusada {
+        long expiraEm = prazoDoTtl(params.get("ttl"));
+        long epoca = epocaDaQuery(params);
+        synchronized (ESCRITA) {
+            String recusa = aceitarEpoca(epoca, params.get("leader"));
+            if (recusa != null) {
+                throw new OperacaoRecusada(409, recusa);
+            }
+            String atual = valorVivo(key);
+            if (expiraEm == 0 && atual != null && (op.equals("incr") || op.equals("append"))) {
+                expiraEm = EXPIRA_EM.getOrDefault(key, 0L);
+            }
+            String novo;
+            switch (op) {
+                case "set":
+                    novo = params.get("value");
+                    break;
+
+                case "cas": {
+                    String esperado = params.get("expected");
+                    if (esperado == null) {
+                        throw new OperacaoRecusada(400, "Parâmetro 'expected' ausente");
+                    }
+                    if (!esperado.equals(atual)) {
+                        throw new OperacaoRecusada(409, atual == null
+                                ? "CAS falhou: chave não existe"
+                                : "CAS falhou: valor atual=" + atual);
+                    }
+                    novo = params.get("value");
+                    break;
+                }
+
+                case "incr": {
+                    long delta;
+                    long base;
+                    try {
+                        delta = Long.parseLong(params.getOrDefault("delta", "1"));
+                    } catch (NumberFormatException e) {
+                        throw new OperacaoRecusada(400, "Delta inválido: " + params.get("delta"));
+                    }
+                    try {
+                        base = atual == null ? 0 : Long.parseLong(atual);
+                    } catch (NumberFormatException e) {
+                        throw new OperacaoRecusada(400, "Valor atual não é um número inteiro: " + atual);
+                    }
+                    try {
+                        novo = Long.toString(Math.addExact(base, delta));
+                    } catch (ArithmeticException e) {
+                        throw new OperacaoRecusada(400, "INCR estouraria o limite de um long");
+                    }
+                    break;
+                }
+
+                case "append":
+                    novo = atual == null ? params.get("value") : atual + params.get("value");
+                    break;
+
+                default:
+                    throw new OperacaoRecusada(400, "Operação desconhecida: " + op);
+            }
+
+            LogEntry entry = appendToLocalLog(key, novo, expiraEm);
+            applyEntry(entry);
+            return entry;
+        }
+    }
+
+    // epoch=N que o Gateway manda no /set e no /append; sem ele (-1) não há o que conferir
+    private static long epocaDaQuery(Map<String, String> params) throws OperacaoRecusada {
+        String epoch = params.get("epoch");
+        if (epoch == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(epoch);
+        } catch (NumberFormatException e) {
+            throw new OperacaoRecusada(400, "Época inválida: " + epoch);
+        }
+    }
+
+    /**
+     * Confere a época e o líder de uma escrita contra os maiores já vistos
+     * (e os guarda). null se aceita; senão, o motivo da recusa.
+     */
+    private static String aceitarEpoca(long epoca, String lider) {
+        synchronized (ESCRITA) {
+            if (epoca < 0) {
+                return null;
+            }
+            if (epoca < epocaVista) {
+                return "Época de líder antiga: " + epoca + " < " + epocaVista;
+            }
+            if (epoca == epocaVista) {
+                if (lider != null && liderVisto != null && !lider.equals(liderVisto)) {
+                    return "Época " + epoca + " já tem outro líder: " + liderVisto;
+                }
+                if (liderVisto == null) {
+                    liderVisto = lider;
+                }
+                return null;
+            }
+            System.out.println("[Nó " + NODE_ID + "] Época de líder " + epoca + ": " + lider
+                    + (NODE_ID.equals(lider) ? " (este nó)" : ""));
+            epocaVista = epoca;
+            liderVisto = lider;
+            return null;
+        }
+    }
+
+    // ttl em segundos -> instante no relógio deste nó, que é o que vai para o log
+    private static long prazoDoTtl(String ttl) throws OperacaoRecusada {
+        if (ttl == null || ttl.isEmpty()) {
+            return 0;
+        }
+        long segundos;
+        try {
+            segundos = Long.parseLong(ttl);
+        } catch (NumberFormatException e) {
+            throw new OperacaoRecusada(400, "TTL inválido: " + ttl);
+        }
+        if (segundos <= 0 || segundos > Integer.MAX_VALUE) {
+            throw new OperacaoRecusada(400, "TTL deve ser um número positivo de segundos");
+        }
+        return System.currentTimeMillis() + segundos * 1000;
+    }
+
+    /** Valor da chave, ou null se ela não existe ou o prazo já venceu (e então é removida). */
+    static String valorVivo(String key) {
+        String value = STATE.get(key);
+        if (value == null) {
+            return null;
+        }
+        Long expiraEm = EXPIRA_EM.get(key);
+        if (expiraEm != null && expiraEm <= System.currentTimeMillis()) {
+            expirar(key, expiraEm);
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Remove a chave se o prazo dela ainda for o informado (um SET posterior
+     * pode ter trocado ou tirado o TTL). O Bloom filter fica como está: ele
+     * só tem falsos positivos a mais.
+     */
+    static void expirar(String key, long expiraEm) {
+        synchronized (ESCRITA) {
+            Long atual = EXPIRA_EM.get(key);
+            if (atual == null || atual != expiraEm) {
+                if (atual != null && atual > expiraEm) {
+                    EXPIRACOES.agendar(key, atual); // TTL renovado: a roda só tinha o prazo antigo
+                }
+                return;
+            }
+            EXPIRA_EM.remove(key);
+            STATE.remove(key);
+            INDICE.remove(key);
+            WTinyLfu cache = CACHE;
+            if (cache != null) {
+                cache.remover(key);
+            }
+        }
+        Metrics.EXPIRADAS.increment();
+        System.out.println("[Nó " + NODE_ID + "] Chave expirada: " + key);
+    }
+
 
 
     static class GetHandler implements HttpHandler {
@@ -197,7 +587,18 @@ public class ReplicaNodeApplication {
             }
              System.out.println("[Nó] Recebeu GET: key=" + key);
 
-            String value = STATE.get(key);
+            long inicio = System.nanoTime();
+            String value = valorVivo(key);
+            if (value == null) {
+                Metrics.FALHAS_CACHE.increment();
+            } else {
+                Metrics.ACERTOS_CACHE.increment();
+                WTinyLfu cache = CACHE;
+                if (cache != null) {
+                    cache.registrarLeitura(key); // sem lock: só anota para a política
+                }
+            }
+            Metrics.GET.recordSince(inicio);
             if (value == null) {
                 send(exchange, 404, "Chave não encontrada");
             } else {
@@ -205,6 +606,88 @@ public class ReplicaNodeApplication {
             }
         }
     }
+    /**
+     * /scan?prefix=&start=&end=&limit=&cursor=
+     *
+     * Percorre o índice ordenado a partir do maior entre start (inclusive),
+     * prefix e cursor (exclusive), até end (exclusive) ou até sair do
+     * prefixo. A resposta vai em chunks, uma linha "chave=valor" (ambos
+     * codificados como numa query) por chave, e termina com "# cursor=X"
+     * se parou no limite (X vai no cursor da próxima página) ou "# fim".
+     * Sem a linha final, a resposta foi cortada no meio.
+     */
+    static class ScanHandler implements HttpHandler {
+        private static final int LIMITE_PADRAO = 1000;
+        private static final int LIMITE_MAXIMO = 100_000;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String query = exchange.getRequestURI().getRawQuery();
+            Map<String, String> params = query == null ? Map.of() : QueryUtils.parseQuery(query);
+            String prefix = params.get("prefix");
+            String start = params.get("start");
+            String end = params.get("end");
+            String cursor = params.get("cursor");
+
+            int limit;
+            try {
+                limit = Integer.parseInt(params.getOrDefault("limit", String.valueOf(LIMITE_PADRAO)));
+            } catch (NumberFormatException e) {
+                send(exchange, 400, "Limite inválido: " + params.get("limit"));
+                return;
+            }
+            if (limit <= 0 || limit > LIMITE_MAXIMO) {
+                send(exchange, 400, "Limite deve estar entre 1 e " + LIMITE_MAXIMO);
+                return;
+            }
+
+            // ponto de partida: o maior dos limites inferiores
+            String de = null;
+            boolean inclusivo = true;
+            for (String candidato : new String[]{start, prefix}) {
+                if (candidato != null && (de == null || candidato.compareTo(de) > 0)) {
+                    de = candidato;
+                }
+            }
+            if (cursor != null && (de == null || cursor.compareTo(de) >= 0)) {
+                de = cursor;
+                inclusivo = false;
+            }
+            java.util.Iterator<String> it = (de == null ? INDICE : INDICE.tailSet(de, inclusivo)).iterator();
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0); // chunked
+            try (java.io.Writer out = new java.io.BufferedWriter(
+                    new java.io.OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 16 * 1024)) {
+                int n = 0;
+                String ultima = null;
+                while (it.hasNext()) {
+                    String key = it.next();
+                    if ((end != null && key.compareTo(end) >= 0)
+                            || (prefix != null && !key.startsWith(prefix))) {
+                        break;
+                    }
+                    String value = valorVivo(key);
+                    if (value == null) {
+                        continue;
+                    }
+                    if (n == limit) {
+                        // ainda há chaves: a página termina na anterior
+                        out.write("# cursor=" + URLEncoder.encode(ultima, StandardCharsets.UTF_8) + "\n");
+                        return;
+                    }
+                    out.write(URLEncoder.encode(key, StandardCharsets.UTF_8));
+                    out.write('=');
+                    out.write(URLEncoder.encode(value, StandardCharsets.UTF_8));
+                    out.write('\n');
+                    ultima = key;
+                    n++;
+                }
+                out.write("# fim\n");
+            }
+        }
+    }
+
     // Handler chamado pelo Gateway para entregar entradas de Log aos followers
     static class AppendHandler implements HttpHandler {
         @Override
@@ -220,6 +703,14 @@ public class ReplicaNodeApplication {
             String indexStr = params.get("index");
             String key = params.get("key");
             String value = params.get("value");
+            if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                try {
+                    value = lerValorDoCorpo(exchange);
+                } catch (OperacaoRecusada e) {
+                    send(exchange, e.status, e.getMessage());
+                    return;
+                }
+            }
 
             if (indexStr == null || key == null || value == null) {
                 send(exchange, 400, "Parâmetros 'index', 'key' ou 'value' ausentes");
@@ -234,58 +725,226 @@ public class ReplicaNodeApplication {
                 return;
             }
 
-            LogEntry entry = new LogEntry(idx, key, value);
+            // ttlMs é o que faltava no relógio do líder; o prazo daqui conta do relógio deste nó
+            long expiraEm = 0;
+            String ttlMs = params.get("ttlMs");
+            if (ttlMs != null) {
+                try {
+                    long restante = Long.parseLong(ttlMs);
+                    if (restante < 0) {
+                        throw new NumberFormatException();
+                    }
+                    expiraEm = System.currentTimeMillis() + restante;
+                } catch (NumberFormatException e) {
+                    send(exchange, 400, "Prazo de expiração inválido: " + ttlMs);
+                    return;
+                }
+            }
+
+            long epoca;
+            try {
+                epoca = epocaDaQuery(params);
+            } catch (OperacaoRecusada e) {
+                send(exchange, e.status, e.getMessage());
+                return;
+            }
+            String recusa = aceitarEpoca(epoca, params.get("leader"));
+            if (recusa != null) {
+                System.out.println("[Nó " + NODE_ID + "] APPEND recusado, index=" + idx + ": " + recusa);
+                send(exchange, 409, recusa);
+                return;
+            }
+
+            long inicio = System.nanoTime();
+            LogEntry entry = new LogEntry(idx, key, value, expiraEm);
             synchronized (LOG) {
                 LOG.add(entry);
             }
+            Metrics.LOG_APPEND.recordSince(inicio);
+            Metrics.ULTIMO_INDICE.accumulateAndGet(idx, Math::max);
+            // se este nó virar líder, continua a numeração do líder atual em vez de reusar índices
+            LOG_INDEX_SEQ.accumulateAndGet(idx, Math::max);
             applyEntry(entry);
 
             System.out.println("[Nó " + NODE_ID + "] APPEND recebido: index=" + idx +
-                    " key=" + key + " value=" + value);
+                    " key=" + key + " value=" + resumo(value));
 
             send(exchange, 200, "OK APPEND index=" + idx);
         }
     }
     // ---- Funções do Log Replicado no Nó ----
 
-    private static LogEntry appendToLocalLog(String key, String value) {
+    static LogEntry appendToLocalLog(String key, String value, long expiraEm) {
+        long inicio = System.nanoTime();
         int index = LOG_INDEX_SEQ.incrementAndGet();
-        LogEntry entry = new LogEntry(index, key, value);
+        LogEntry entry = new LogEntry(index, key, value, expiraEm);
         synchronized (LOG) {
             LOG.add(entry);
         }
+        Metrics.LOG_APPEND.recordSince(inicio);
+        Metrics.ULTIMO_INDICE.accumulateAndGet(index, Math::max);
         System.out.println("[Nó " + NODE_ID + "] Log local: append index=" + index +
-                " key=" + key + " value=" + value);
+                " key=" + key + " value=" + resumo(value));
         return entry;
     }
 
-    private static void applyEntry(LogEntry entry) {
-        STATE.put(entry.key, entry.value);
+    static void applyEntry(LogEntry entry) {
+        long inicio = System.nanoTime();
+        // sob o lock de escrita para não cruzar com uma expiração da mesma chave
+        synchronized (ESCRITA) {
+            // filtro e índice vêm antes: a chave nunca fica visível no estado sem estar neles
+            if (!STATE.containsKey(entry.key)) {
+                CHAVES.adicionar(entry.key);
+                INDICE.add(entry.key);
+            }
+            if (entry.expiraEm > 0) {
+                EXPIRA_EM.put(entry.key, entry.expiraEm);
+            } else {
+                EXPIRA_EM.remove(entry.key);
+            }
+            STATE.put(entry.key, entry.value);
+            WTinyLfu cache = CACHE;
+            if (cache != null) {
+                for (String despejada : cache.registrarEscrita(entry.key, WTinyLfu.custo(entry.key, entry.value))) {
+                    despejar(despejada);
+                }
+            }
+        }
+        if (entry.expiraEm > 0) {
+            EXPIRACOES.agendar(entry.key, entry.expiraEm);
+        }
         lastAppliedIndex = entry.index;
+        Metrics.APPLY.recordSince(inicio);
+        Assinaturas.avisar();
         System.out.println("[Nó " + NODE_ID + "] Estado aplicado: " +
-                entry.key + "=" + entry.value + " (index=" + entry.index + ")");
+                entry.key + "=" + resumo(entry.value) + " (index=" + entry.index + ")");
     }
 
-    private static void replicateEntryViaGateway(LogEntry entry) throws Exception {
-        String url = GATEWAY_BASE_URL
-                + "/append?index=" + entry.index
-                + "&key=" + URLEncoder.encode(entry.key, StandardCharsets.UTF_8)
-                + "&value=" + URLEncoder.encode(entry.value, StandardCharsets.UTF_8);
+    // Chamado sob o lock de escrita, com a chave já fora da política de cache
+    private static void despejar(String key) {
+        STATE.remove(key);
+        INDICE.remove(key);
+        EXPIRA_EM.remove(key);
+    }
 
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .GET()
-                .build();
+    /**
+     * Compacta o log: fica só a última entrada de cada chave, e nem ela se
+     * o prazo já venceu ou se a chave foi despejada no modo cache. Os
+     * índices das entradas que sobram não mudam.
+     */
+    static void compactarLog() {
+        long agora = System.currentTimeMillis();
+        int antes;
+        int depois;
+        synchronized (LOG) {
+            antes = LOG.size();
+            Map<String, Integer> ultima = new java.util.HashMap<>(antes * 2);
+            for (LogEntry e : LOG) {
+                ultima.put(e.key, e.index);
+            }
+            int aplicado = lastAppliedIndex;
+            LOG.removeIf(e -> ultima.get(e.key) != e.index
+                    || (e.expiraEm > 0 && e.expiraEm <= agora)
+                    || (e.index <= aplicado && !STATE.containsKey(e.key)));
+            depois = LOG.size();
+        }
+        // só compacta de novo quando o log dobrar: um log cheio de chaves vivas não encolhe
+        tamanhoAposCompactar = depois;
+        System.out.println("[Nó " + NODE_ID + "] Log compactado: " + antes + " -> " + depois + " entradas");
+    }
 
-        HttpResponse<String> response =
-                client.send(request, HttpResponse.BodyHandlers.ofString());
+    // O valor vai no corpo: sem URL encoding e sem limite de tamanho de URL.
+    // Se o Gateway preferido não responder, tenta os outros da lista; o /append
+    // é idempotente no estado (mesmo índice, mesma chave e valor).
+    // A época e o líder do /set vão junto, para os followers recusarem o que
+    // vier de um líder antigo ou de um segundo líder na mesma época.
+    private static void replicateEntryViaGateway(LogEntry entry, String epoca, String lider) throws Exception {
+        String caminho = "/append?index=" + entry.index
+                + "&key=" + URLEncoder.encode(entry.key, StandardCharsets.UTF_8);
+        if (entry.expiraEm > 0) {
+            caminho += "&ttlMs=" + entry.ttlRestanteMs();
+        }
+        if (epoca != null) {
+            caminho += "&epoch=" + epoca;
+        }
+        if (lider != null) {
+            caminho += "&leader=" + URLEncoder.encode(lider, StandardCharsets.UTF_8);
+        }
+        // o valor entrou como UTF-8 válido (CorpoDoPost.comoUtf8): são os mesmos bytes que o cliente mandou
+        byte[] valor = entry.value.getBytes(StandardCharsets.UTF_8);
+
+        java.util.List<Gateway> gateways = GATEWAYS;
+        int preferido = GATEWAY_PREFERIDO.get();
+        HttpResponse<String> response = null;
+        IOException erro = null;
+        long inicio = System.nanoTime();
+        for (int i = 0; i < gateways.size() && response == null; i++) {
+            int g = Math.floorMod(preferido + i, gateways.size());
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(gateways.get(g).baseUrl + caminho))
+                    .timeout(java.time.Duration.ofSeconds(10))
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(valor))
+                    .build();
+            try {
+                response = GATEWAY_CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+                if (g != preferido) {
+                    GATEWAY_PREFERIDO.set(g);
+                    System.out.println("[Nó " + NODE_ID + "] Replicação passou para o Gateway " + gateways.get(g));
+                }
+            } catch (IOException e) {
+                erro = e;
+            }
+        }
+        if (response == null) {
+            throw erro;
+        }
+        Metrics.REPLICACAO.recordSince(inicio);
 
         System.out.println("[Nó " + NODE_ID + "] replicateEntryViaGateway -> " +
                 "status=" + response.statusCode() +
                 " body=" + response.body());
     }
 
+    /**
+     * Lê o corpo e o decodifica uma vez só, direto para a String do estado.
+     * 413 se passar do limite, 400 se não for UTF-8 válido.
+     */
+    static String lerValorDoCorpo(HttpExchange exchange) throws IOException, OperacaoRecusada {
+        CorpoDoPost corpo = CorpoDoPost.ler(exchange.getRequestBody());
+        if (corpo == null) {
+            throw new OperacaoRecusada(413, "Valor maior que " + CorpoDoPost.MAX_VALOR_BYTES + " bytes");
+        }
+        try {
+            return corpo.comoUtf8();
+        } catch (java.nio.charset.CharacterCodingException e) {
+            throw new OperacaoRecusada(400, "Valor não é UTF-8 válido");
+        }
+    }
+
+    // Valores grandes não vão inteiros para o log de console
+    private static String resumo(String value) {
+        return value.length() <= 80 ? value : value.substring(0, 80) + "... (" + value.length() + " chars)";
+    }
+
+    static int getTamanhoDoLog() {
+        return LOG.size();
+    }
+
+    static int getLastAppliedIndex() {
+        return lastAppliedIndex;
+    }
+
+    /** Líder na maior época vista: o Gateway o indicou nela e não veio nenhuma época maior. */
+    static boolean isLider() {
+        synchronized (ESCRITA) {
+            return epocaVista >= 0 && NODE_ID.equals(liderVisto);
+        }
+    }
+
+    static long getEpocaVista() {
+        return epocaVista;
+    }
+
     static class QueryUtils {
         static Map<String, String> parseQuery(String query) {
             Map<String, String> map = new ConcurrentHashMap<>();
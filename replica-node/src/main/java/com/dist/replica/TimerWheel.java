@@ -0,0 +1,163 @@
+package com.dist.replica;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timer wheel hierárquica para a expiração ativa das chaves com TTL.
+ *
+ * Quatro níveis de 64 posições; cada posição do nível 0 vale um tick
+ * (100 ms) e cada posição do nível N vale 64 posições do nível N-1:
+ *  - nível 0: até 6,4 s à frente
+ *  - nível 1: até ~7 min
+ *  - nível 2: até ~7 h
+ *  - nível 3: até ~19 dias (mais que isso é reagendado quando chegar lá)
+ *
+ * Agendar custa O(1). A cada tick só a posição atual do nível 0 é
+ * disparada e, quando um nível dá a volta, a posição correspondente do
+ * nível de cima desce ("cascata") para os níveis de baixo. Nada percorre
+ * todas as chaves.
+ *
+ * Os prazos são instantes absolutos (epoch em ms) no relógio deste nó,
+ * os mesmos gravados no log local. Cancelar não existe: quem recebe o
+ * disparo confere se o prazo ainda vale.
+ *
+ * Cada chave tem no máximo um prazo vivo na roda. Renovar o TTL para mais
+ * tarde não agenda nada (o prazo antigo dispara e quem recebe reagenda
+ * com o atual), então uma chave de sessão renovada a cada segundo ocupa
+ * um item, e não um por renovação.
+ */
+public class TimerWheel {
+
+    /** Recebe as chaves cujo prazo venceu. */
+    public interface Disparo {
+        void expirou(String chave, long expiraEm);
+    }
+
+    static final long TICK_MS = 100;
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int NIVEIS = 4;
+    private static final long ALCANCE = 1L << (BITS * NIVEIS); // em ticks
+
+    private static final class Item {
+        final String chave;
+        final long expiraEm;
+
+        Item(String chave, long expiraEm) {
+            this.chave = chave;
+            this.expiraEm = expiraEm;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final List<Item>[][] rodas = new List[NIVEIS][SLOTS];
+
+    // Prazo vivo de cada chave na roda; itens com outro prazo estão vencidos e são descartados
+    private final Map<String, Long> vivos = new HashMap<>();
+    private final Disparo disparo;
+    private long tickAtual;
+    private int pendentes;
+
+    public TimerWheel(Disparo disparo, long agoraMs) {
+        this.disparo = disparo;
+        this.tickAtual = agoraMs / TICK_MS;
+    }
+
+    /** Agenda o prazo, a menos que a chave já tenha um prazo mais cedo na roda. */
+    public synchronized void agendar(String chave, long expiraEm) {
+        Long atual = vivos.get(chave);
+        if (atual != null && atual <= expiraEm) {
+            return;
+        }
+        vivos.put(chave, expiraEm);
+        inserir(new Item(chave, expiraEm), tickAtual + 1);
+        pendentes++;
+    }
+
+    public synchronized int getPendentes() {
+        return pendentes;
+    }
+
+    // Escolhe o nível pela distância até o prazo; o que já venceu vai para o primeiro
+    // tick ainda não disparado (o atual durante a cascata, o próximo fora dela)
+    private void inserir(Item item, long primeiroTick) {
+        long tick = Math.max(primeiroTick, (item.expiraEm + TICK_MS - 1) / TICK_MS);
+        long delta = tick - tickAtual;
+        if (delta >= ALCANCE) {
+            tick = tickAtual + ALCANCE - 1;
+            delta = ALCANCE - 1;
+        }
+        int nivel = 0;
+        while (delta >= 1L << (BITS * (nivel + 1))) {
+            nivel++;
+        }
+        int slot = (int) ((tick >>> (BITS * nivel)) & (SLOTS - 1));
+        List<Item> lista = rodas[nivel][slot];
+        if (lista == null) {
+            lista = new ArrayList<>(4);
+            rodas[nivel][slot] = lista;
+        }
+        lista.add(item);
+    }
+
+    /**
+     * Avança até o instante informado e dispara o que venceu. Os disparos
+     * acontecem fora do lock da roda, na thread de quem chamou.
+     */
+    public void avancar(long agoraMs) {
+        long alvo = agoraMs / TICK_MS;
+        List<Item> vencidos = null;
+        synchronized (this) {
+            while (tickAtual < alvo) {
+                tickAtual++;
+                for (int nivel = 1; nivel < NIVEIS; nivel++) {
+                    if ((tickAtual & ((1L << (BITS * nivel)) - 1)) != 0) {
+                        break;
+                    }
+                    cascata(nivel, (int) ((tickAtual >>> (BITS * nivel)) & (SLOTS - 1)));
+                }
+                int slot = (int) (tickAtual & (SLOTS - 1));
+                List<Item> lista = rodas[0][slot];
+                if (lista == null) {
+                    continue;
+                }
+                rodas[0][slot] = null;
+                for (Item item : lista) {
+                    if (item.expiraEm > agoraMs) {
+                        inserir(item, tickAtual + 1); // veio de além do alcance da roda
+                        continue;
+                    }
+                    pendentes--;
+                    Long vivo = vivos.get(item.chave);
+                    if (vivo == null || vivo != item.expiraEm) {
+                        continue; // um prazo mais cedo tomou o lugar deste
+                    }
+                    vivos.remove(item.chave);
+                    if (vencidos == null) {
+                        vencidos = new ArrayList<>();
+                    }
+                    vencidos.add(item);
+                }
+            }
+        }
+        if (vencidos != null) {
+            for (Item item : vencidos) {
+                disparo.expirou(item.chave, item.expiraEm);
+            }
+        }
+    }
+
+    private void cascata(int nivel, int slot) {
+        List<Item> lista = rodas[nivel][slot];
+        if (lista == null) {
+            return;
+        }
+        rodas[nivel][slot] = null;
+        for (Item item : lista) {
+            inserir(item, tickAtual);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.dist.replica;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Política de despejo W-TinyLFU do modo cache (--maxMemoryBytes=).
+ *
+ * As chaves ficam em três filas LRU, medidas em bytes estimados:
+ *  - janela (1% do orçamento): toda chave nova entra aqui
+ *  - provação e protegida (o resto, 80% dele para a protegida): quem sai
+ *    da janela vai para a provação, e uma leitura na provação promove a
+ *    chave para a protegida
+ *
+ * Quando o total passa do orçamento, a chave que sai da janela disputa a
+ * vaga com a primeira da fila de provação: fica a que tiver mais acessos
+ * recentes segundo um Count-Min de contadores pequenos (um byte cada,
+ * saturando em 15), que é dividido por dois de tempos em tempos para
+ * esquecer o passado. Assim uma rajada
+ * de chaves lidas uma vez só não expulsa as chaves quentes.
+ *
+ * O GET não toca nas filas nem espera lock: só anota a chave num buffer
+ * circular por thread. As anotações são aplicadas em lote por quem
+ * escreve, pela thread de expiração a cada tick e pelo próprio leitor que
+ * achar o buffer cheio, mas este só com tryLock: se a política estiver
+ * ocupada, a anotação é descartada.
+ */
+public class WTinyLfu {
+
+    // Estimativa do custo fixo de uma chave: nós do mapa, do índice e desta política
+    static final int CUSTO_POR_CHAVE = 160;
+
+    private static final int BUFFERS = 16;
+    private static final int TAMANHO_BUFFER = 64;
+
+    private final long maxBytes;
+    private final long maxJanela;
+    private final long maxProtegida;
+
+    private final Map<String, No> nos = new HashMap<>();
+    private final Fila janela = new Fila();
+    private final Fila provacao = new Fila();
+    private final Fila protegida = new Fila();
+    private final Sketch sketch;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final BufferDeLeitura[] leituras = new BufferDeLeitura[BUFFERS];
+
+    private final AtomicLong bytesUsados = new AtomicLong();
+    private final AtomicLong despejos = new AtomicLong();
+
+    public WTinyLfu(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.maxJanela = Math.max(1, maxBytes / 100);
+        this.maxProtegida = (maxBytes - maxJanela) * 8 / 10;
+        this.sketch = new Sketch(maxBytes / CUSTO_POR_CHAVE);
+        for (int i = 0; i < BUFFERS; i++) {
+            leituras[i] = new BufferDeLeitura();
+        }
+    }
+
+    /** Bytes estimados de uma chave com esse valor. */
+    static long custo(String chave, String valor) {
+        return CUSTO_POR_CHAVE + 2L * (chave.length() + valor.length());
+    }
+
+    /** Anota uma leitura que achou a chave. Não bloqueia; pode perder a anotação. */
+    public void registrarLeitura(String chave) {
+        BufferDeLeitura b = leituras[(int) Thread.currentThread().getId() & (BUFFERS - 1)];
+        if (!b.oferecer(chave)) {
+            manutencao();
+            b.oferecer(chave);
+        }
+    }
+
+    /**
+     * Registra a escrita e devolve as chaves que precisam sair para caber no
+     * orçamento (pode incluir a própria chave, se ela perder a disputa).
+     * Quem chama remove essas chaves do estado.
+     */
+    public List<String> registrarEscrita(String chave, long bytes) {
+        lock.lock();
+        try {
+            drenarLeituras();
+            sketch.incrementar(chave);
+            No no = nos.get(chave);
+            if (no == null) {
+                no = new No(chave, bytes);
+                nos.put(chave, no);
+                janela.adicionar(no);
+                bytesUsados.addAndGet(bytes);
+            } else {
+                filaDe(no).bytes += bytes - no.bytes;
+                bytesUsados.addAndGet(bytes - no.bytes);
+                no.bytes = bytes;
+                acessar(no);
+            }
+            return despejar();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** A chave saiu do estado por outro motivo (TTL). */
+    public void remover(String chave) {
+        lock.lock();
+        try {
+            No no = nos.remove(chave);
+            if (no != null) {
+                filaDe(no).remover(no);
+                bytesUsados.addAndGet(-no.bytes);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Aplica as leituras pendentes, se ninguém mais estiver mexendo nas filas. */
+    public void manutencao() {
+        if (lock.tryLock()) {
+            try {
+                drenarLeituras();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drenarLeituras() {
+        for (BufferDeLeitura b : leituras) {
+            b.drenar(this::aplicarLeitura);
+        }
+    }
+
+    private void aplicarLeitura(String chave) {
+        sketch.incrementar(chave);
+        No no = nos.get(chave);
+        if (no != null) {
+            acessar(no);
+        }
+    }
+
+    // Recência: janela e protegida só vão para o fim; provação sobe para a protegida
+    private void acessar(No no) {
+        Fila fila = filaDe(no);
+        fila.remover(no);
+        if (fila == provacao) {
+            no.fila = PROTEGIDA;
+            protegida.adicionar(no);
+            while (protegida.bytes > maxProtegida && protegida.cabeca != protegida.cauda) {
+                No rebaixado = protegida.cabeca;
+                protegida.remover(rebaixado);
+                rebaixado.fila = PROVACAO;
+                provacao.adicionar(rebaixado);
+            }
+        } else {
+            fila.adicionar(no);
+        }
+    }
+
+    private List<String> despejar() {
+        List<String> saem = null;
+        // quem passa do tamanho da janela vai disputar uma vaga na área principal
+        while (janela.bytes > maxJanela && janela.cabeca != null) {
+            No candidato = janela.cabeca;
+            janela.remover(candidato);
+            candidato.fila = PROVACAO;
+            provacao.adicionar(candidato);
+            while (bytesUsados.get() > maxBytes) {
+                No vitima = provacao.cabeca;
+                No sai = vitima == candidato
+                        || sketch.frequencia(candidato.chave) <= sketch.frequencia(vitima.chave)
+                        ? candidato : vitima;
+                saem = tirar(sai, saem);
+                if (sai == candidato) {
+                    break;
+                }
+            }
+        }
+        // ainda acima (valores grandes na janela): sai quem estiver na frente
+        while (bytesUsados.get() > maxBytes && !nos.isEmpty()) {
+            No sai = provacao.cabeca != null ? provacao.cabeca
+                    : protegida.cabeca != null ? protegida.cabeca : janela.cabeca;
+            saem = tirar(sai, saem);
+        }
+        return saem == null ? List.of() : saem;
+    }
+
+    private List<String> tirar(No no, List<String> saem) {
+        filaDe(no).remover(no);
+        nos.remove(no.chave);
+        bytesUsados.addAndGet(-no.bytes);
+        despejos.incrementAndGet();
+        if (saem == null) {
+            saem = new ArrayList<>(2);
+        }
+        saem.add(no.chave);
+        return saem;
+    }
+
+    private Fila filaDe(No no) {
+        switch (no.fila) {
+            case PROVACAO: return provacao;
+            case PROTEGIDA: return protegida;
+            default: return janela;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getBytesUsados() {
+        return bytesUsados.get();
+    }
+
+    public long getDespejos() {
+        return despejos.get();
+    }
+
+    private static final int JANELA = 0;
+    private static final int PROVACAO = 1;
+    private static final int PROTEGIDA = 2;
+
+    private static final class No {
+        final String chave;
+        long bytes;
+        int fila = JANELA;
+        No anterior, proximo;
+
+        No(String chave, long bytes) {
+            this.chave = chave;
+            this.bytes = bytes;
+        }
+    }
+
+    /** Lista duplamente ligada: cabeça = menos recente. */
+    private static final class Fila {
+        No cabeca, cauda;
+        long bytes;
+
+        void adicionar(No no) {
+            no.anterior = cauda;
+            no.proximo = null;
+            if (cauda == null) {
+                cabeca = no;
+            } else {
+                cauda.proximo = no;
+            }
+            cauda = no;
+            bytes += no.bytes;
+        }
+
+        void remover(No no) {
+            if (no.anterior == null) {
+                cabeca = no.proximo;
+            } else {
+                no.anterior.proximo = no.proximo;
+            }
+            if (no.proximo == null) {
+                cauda = no.anterior;
+            } else {
+                no.proximo.anterior = no.anterior;
+            }
+            no.anterior = no.proximo = null;
+            bytes -= no.bytes;
+        }
+    }
+
+    /**
+     * Buffer circular de um produtor-qualquer / um consumidor: as threads de
+     * leitura disputam só um contador atômico, e se o consumidor ficou para
+     * trás a anotação é descartada em vez de esperar.
+     */
+    private static final class BufferDeLeitura {
+        private final AtomicReferenceArray<String> slots = new AtomicReferenceArray<>(TAMANHO_BUFFER);
+        private final AtomicLong escrita = new AtomicLong();
+        private volatile long leitura;
+
+        // false só se o buffer está cheio
+        boolean oferecer(String chave) {
+            long e = escrita.get();
+            if (e - leitura >= TAMANHO_BUFFER) {
+                return false;
+            }
+            if (escrita.compareAndSet(e, e + 1)) {
+                slots.lazySet((int) (e & (TAMANHO_BUFFER - 1)), chave);
+            }
+            return true; // perdeu a corrida: descarta sem insistir
+        }
+
+        // só com o lock da política
+        void drenar(java.util.function.Consumer<String> destino) {
+            long l = leitura;
+            long fim = escrita.get();
+            while (l < fim) {
+                int i = (int) (l & (TAMANHO_BUFFER - 1));
+                String chave = slots.get(i);
+                if (chave == null) {
+                    break; // produtor ainda não terminou de gravar
+                }
+                slots.lazySet(i, null);
+                destino.accept(chave);
+                l++;
+            }
+            leitura = l;
+        }
+    }
+
+    /** Count-Min de 4 linhas com um byte por contador (saturando em 15), envelhecido por divisão. */
+    private static final class Sketch {
+        private final int largura;
+        private final byte[] contadores;
+        private final int amostrasAteEnvelhecer;
+        private int amostras;
+
+        Sketch(long chavesEstimadas) {
+            int l = Integer.highestOneBit((int) Math.max(1024, Math.min(1 << 20, chavesEstimadas)) * 2 - 1);
+            largura = l;
+            contadores = new byte[4 * l];
+            amostrasAteEnvelhecer = 10 * l;
+        }
+
+        void incrementar(String chave) {
+            long h = hash(chave);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32) | 1;
+            boolean mudou = false;
+            for (int i = 0; i < 4; i++) {
+                int idx = i * largura + ((h1 + i * h2) & (largura - 1));
+                if (contadores[idx] < 15) {
+                    contadores[idx]++;
+                    mudou = true;
+                }
+            }
+            if (mudou && ++amostras >= amostrasAteEnvelhecer) {
+                for (int i = 0; i < contadores.length; i++) {
+                    contadores[i] >>= 1;
+                }
+                amostras /= 2;
+            }
+        }
+
+        int frequencia(String chave) {
+            long h = hash(chave);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32) | 1;
+            int min = 15;
+            for (int i = 0; i < 4; i++) {
+                min = Math.min(min, contadores[i * largura + ((h1 + i * h2) & (largura - 1))]);
+            }
+            return min;
+        }
+
+        // hashCode da String com o finalizador do splitmix64
+        private static long hash(String chave) {
+            long h = chave.hashCode() * 0x9e3779b97f4a7c15L;
+            h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+            h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+            return h ^ (h >>> 31);
+        }
+    }
+}
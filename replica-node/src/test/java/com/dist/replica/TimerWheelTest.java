@@ -0,0 +1,123 @@
+package com.dist.replica;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Roda de expiração com relógio simulado: o teste chama avancar() com o
+ * instante que quiser, então nada depende do tempo real.
+ */
+class TimerWheelTest {
+
+    private final List<String> disparos = new ArrayList<>();
+    private final TimerWheel roda = new TimerWheel((chave, expiraEm) -> disparos.add(chave + "@" + expiraEm), 0);
+
+    @Test
+    void cadaPrazoDisparaUmaVezNoTickCertoEmQualquerNivel() {
+        long[] prazos = {
+                300,                       // nível 0
+                10_000,                    // nível 1 (> 6,4 s)
+                600_000,                   // nível 2 (10 min)
+                8L * 60 * 60 * 1000,       // nível 3 (8 h)
+                21L * 24 * 60 * 60 * 1000  // além do alcance (~19 dias): reinserido no caminho
+        };
+        for (int i = 0; i < prazos.length; i++) {
+            roda.agendar("k" + i, prazos[i]);
+        }
+
+        for (int i = 0; i < prazos.length; i++) {
+            roda.avancar(prazos[i] - TimerWheel.TICK_MS);
+            assertEquals(i, disparos.size(), "k" + i + " disparou antes do prazo");
+            roda.avancar(prazos[i]);
+            assertEquals(i + 1, disparos.size(), "k" + i + " não disparou no prazo");
+            assertEquals("k" + i + "@" + prazos[i], disparos.get(i));
+        }
+        assertEquals(0, roda.getPendentes());
+    }
+
+    @Test
+    void renovarParaMaisTardeNaoAgendaOutroItem() {
+        for (long prazo = 1_000; prazo <= 100_000; prazo += 100) {
+            roda.agendar("sessao", prazo);
+        }
+        assertEquals(1, roda.getPendentes());
+
+        // só o primeiro prazo está na roda; quem recebe o disparo reagenda com o atual
+        roda.avancar(1_000);
+        assertEquals(List.of("sessao@1000"), disparos);
+        assertEquals(0, roda.getPendentes());
+    }
+
+    @Test
+    void prazoMaisCedoSubstituiOAnterior() {
+        roda.agendar("k", 5_000);
+        roda.agendar("k", 1_000);
+
+        roda.avancar(1_000);
+        assertEquals(List.of("k@1000"), disparos);
+
+        // o item de 5 s ainda estava na roda, mas não vale mais
+        roda.avancar(10_000);
+        assertEquals(List.of("k@1000"), disparos);
+        assertEquals(0, roda.getPendentes());
+    }
+
+    @Test
+    void reagendarDepoisDoDisparoVoltaAContar() {
+        roda.agendar("k", 1_000);
+        roda.avancar(1_000);
+        roda.agendar("k", 3_000);
+        roda.avancar(2_900);
+        assertEquals(List.of("k@1000"), disparos);
+        roda.avancar(3_000);
+        assertEquals(List.of("k@1000", "k@3000"), disparos);
+    }
+
+    @Test
+    void setSemTtlDepoisDoPrazoAgendadoMantemAChave() throws Exception {
+        ReplicaNodeApplication.LogEntry comTtl =
+                ReplicaNodeApplication.executarOperacao("set", "tw-sem-ttl", params("value", "a", "ttl", "60"));
+        ReplicaNodeApplication.executarOperacao("set", "tw-sem-ttl", params("value", "b"));
+
+        // o disparo do prazo antigo chega depois do SET sem TTL: a chave fica
+        ReplicaNodeApplication.expirar("tw-sem-ttl", comTtl.expiraEm);
+        assertEquals("b", ReplicaNodeApplication.valorVivo("tw-sem-ttl"));
+    }
+
+    @Test
+    void disparoDoPrazoAtualRemoveAChave() throws Exception {
+        ReplicaNodeApplication.LogEntry comTtl =
+                ReplicaNodeApplication.executarOperacao("set", "tw-expira", params("value", "a", "ttl", "60"));
+
+        ReplicaNodeApplication.expirar("tw-expira", comTtl.expiraEm);
+        assertNull(ReplicaNodeApplication.valorVivo("tw-expira"));
+    }
+
+    @Test
+    void disparoDeUmPrazoRenovadoReagendaEmVezDeRemover() throws Exception {
+        ReplicaNodeApplication.LogEntry antigo =
+                ReplicaNodeApplication.executarOperacao("set", "tw-renovada", params("value", "a", "ttl", "60"));
+        ReplicaNodeApplication.LogEntry novo =
+                ReplicaNodeApplication.executarOperacao("set", "tw-renovada", params("value", "a", "ttl", "120"));
+        assertTrue(novo.expiraEm > antigo.expiraEm);
+
+        ReplicaNodeApplication.expirar("tw-renovada", antigo.expiraEm);
+        assertEquals("a", ReplicaNodeApplication.valorVivo("tw-renovada"));
+    }
+
+    private static Map<String, String> params(String... pares) {
+        Map<String, String> m = new HashMap<>();
+        for (int i = 0; i < pares.length; i += 2) {
+            m.put(pares[i], pares[i + 1]);
+        }
+        return m;
+    }
+}
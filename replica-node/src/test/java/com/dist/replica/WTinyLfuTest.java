@@ -0,0 +1,104 @@
+package com.dist.replica;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tudo roda numa thread só, então o buffer de leitura só é drenado
+ * quando o teste escreve ou chama manutencao().
+ */
+class WTinyLfuTest {
+
+    // Chaves de 3 letras e valor de 1 letra: todas custam o mesmo
+    private static final long CUSTO = WTinyLfu.custo("k00", "v");
+
+    private final WTinyLfu cache = new WTinyLfu(10 * CUSTO);
+
+    @Test
+    void varreduraNaoExpulsaChavesMaisUsadas() {
+        for (int i = 0; i < 10; i++) {
+            for (int vez = 0; vez < 3; vez++) {
+                assertEquals(List.of(), cache.registrarEscrita(chave("w", i), CUSTO));
+            }
+        }
+
+        // cada chave da varredura é vista uma vez só e perde a disputa pela vaga
+        for (int i = 0; i < 100; i++) {
+            String s = chave("s", i);
+            assertEquals(List.of(s), cache.registrarEscrita(s, CUSTO));
+        }
+        assertEquals(100, cache.getDespejos());
+        assertEquals(10 * CUSTO, cache.getBytesUsados());
+    }
+
+    @Test
+    void chaveQuenteSobreviveAoDespejo() {
+        cache.registrarEscrita("hot", CUSTO);
+        for (int i = 0; i < 20; i++) {
+            cache.registrarLeitura("hot");
+        }
+        cache.manutencao();
+
+        for (int i = 0; i < 1000; i++) {
+            List<String> saem = cache.registrarEscrita(chave("c", i), CUSTO);
+            assertFalse(saem.contains("hot"), "a chave quente saiu na escrita " + i);
+        }
+        assertTrue(cache.getDespejos() > 0);
+    }
+
+    @Test
+    void leiturasPendentesSaoAplicadasAntesDaEscrita() {
+        for (int i = 0; i < 10; i++) {
+            cache.registrarEscrita(chave("w", i), CUSTO);
+        }
+        // só ficam no buffer; a próxima escrita drena e w00 vai para a protegida
+        for (int i = 0; i < 3; i++) {
+            cache.registrarLeitura("w00");
+        }
+
+        assertEquals(List.of("new"), cache.registrarEscrita("new", CUSTO));
+        // vista pela segunda vez, "new" ganha da mais antiga da provação, que agora é w01
+        assertEquals(List.of("w01"), cache.registrarEscrita("new", CUSTO));
+    }
+
+    @Test
+    void bytesUsadosNuncaPassamDoOrcamento() {
+        WTinyLfu pequeno = new WTinyLfu(64 * 1024);
+        Map<String, Long> vivas = new HashMap<>();
+        Random aleatorio = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            String k = "k" + aleatorio.nextInt(2_000);
+            switch (aleatorio.nextInt(10)) {
+                case 0:
+                    pequeno.remover(k);
+                    vivas.remove(k);
+                    break;
+                case 1:
+                    pequeno.registrarLeitura(k);
+                    break;
+                default:
+                    // de vez em quando um valor maior que a janela inteira
+                    long bytes = WTinyLfu.custo(k, "") + aleatorio.nextInt(aleatorio.nextInt(20) == 0 ? 8_000 : 400);
+                    vivas.put(k, bytes);
+                    for (String saiu : pequeno.registrarEscrita(k, bytes)) {
+                        assertTrue(vivas.remove(saiu) != null, "despejou " + saiu + ", que não estava no cache");
+                    }
+            }
+            assertTrue(pequeno.getBytesUsados() <= pequeno.getMaxBytes(), "passou do orçamento na operação " + i);
+            assertEquals(vivas.values().stream().mapToLong(Long::longValue).sum(), pequeno.getBytesUsados());
+        }
+        assertTrue(pequeno.getDespejos() > 0);
+    }
+
+    private static String chave(String prefixo, int i) {
+        return String.format("%s%02d", prefixo, i);
+    }
+}